@@ -0,0 +1,91 @@
+#!/usr/bin/env bash
+# Startup benchmark: time from JVM launch until /actuator/health/readiness is UP, i.e. until the instance
+# accepts STOMP connections, over several runs per startup mode. Build first with: mvn -Pfaststart package
+#
+#   scripts/startup-benchmark.sh [runs] [mode...]
+#
+# Modes (all start target/chat-app.jar, so only the startup options differ):
+#   default    plain start: eager beans, schema update, JDBC metadata lookup
+#   faststart  the faststart profile: lazy beans, no schema check, deferred JPA bootstrap
+#   aot        faststart plus the AOT-generated bean definitions
+#   cds        aot plus the class data sharing archive target/chat-app.jsa
+#
+# The instance uses the database from application.properties. Environment overrides: PORT (default 18080),
+# JAVA_OPTS (JVM options), APP_ARGS (e.g. "--spring.datasource.url=..."), EXTRA_CLASSPATH (e.g. another JDBC
+# driver), TIMEOUT_SECONDS (default 120). Results are printed and written to target/startup-results.txt.
+set -euo pipefail
+cd "$(dirname "$0")/.."
+
+runs=${1:-5}
+shift || true
+modes=("$@")
+if [ ${#modes[@]} -eq 0 ]; then
+    modes=(default faststart aot cds)
+fi
+port=${PORT:-18080}
+timeout_seconds=${TIMEOUT_SECONDS:-120}
+jar=target/chat-app.jar
+archive=target/chat-app.jsa
+results=target/startup-results.txt
+
+if [ ! -f "$jar" ]; then
+    echo "$jar not found; build it with: mvn -Pfaststart package" >&2
+    exit 1
+fi
+
+mode_options() {
+    case "$1" in
+        default) echo "" ;;
+        faststart) echo "-Dspring.profiles.active=faststart" ;;
+        aot) echo "-Dspring.profiles.active=faststart -Dspring.aot.enabled=true" ;;
+        cds) echo "-Dspring.profiles.active=faststart -Dspring.aot.enabled=true -XX:SharedArchiveFile=$archive -Xlog:cds=off" ;;
+        *) echo "Unknown mode: $1" >&2; exit 1 ;;
+    esac
+}
+
+now_ms() {
+    echo $(( $(date +%s%N) / 1000000 ))
+}
+
+# Starts one instance, waits for readiness and prints the elapsed milliseconds; the instance is stopped after
+run_once() {
+    local mode=$1 log=$2
+    local options
+    options=$(mode_options "$mode")
+    local started
+    started=$(now_ms)
+    # shellcheck disable=SC2086
+    java ${JAVA_OPTS:-} $options -cp "$jar${EXTRA_CLASSPATH:+:$EXTRA_CLASSPATH}" com.example.chat.ChatApplication \
+        --server.port="$port" ${APP_ARGS:-} >"$log" 2>&1 &
+    local pid=$!
+    local deadline=$(( started + timeout_seconds * 1000 ))
+    until curl -sf "http://localhost:$port/actuator/health/readiness" >/dev/null 2>&1; do
+        if ! kill -0 "$pid" 2>/dev/null || [ "$(now_ms)" -gt "$deadline" ]; then
+            kill "$pid" 2>/dev/null || true
+            wait "$pid" 2>/dev/null || true
+            echo "Mode $mode did not become ready; see $log" >&2
+            return 1
+        fi
+        sleep 0.02
+    done
+    local elapsed=$(( $(now_ms) - started ))
+    kill "$pid"
+    wait "$pid" 2>/dev/null || true
+    echo "$elapsed"
+}
+
+mkdir -p target
+printf "%-10s %6s %8s %8s %8s\n" mode runs min_ms median_ms max_ms | tee "$results"
+for mode in "${modes[@]}"; do
+    if [ "$mode" = cds ] && [ ! -f "$archive" ]; then
+        echo "$archive not found; skipping cds" >&2
+        continue
+    fi
+    times=()
+    for ((i = 1; i <= runs; i++)); do
+        times+=("$(run_once "$mode" "target/startup-$mode.log")")
+    done
+    sorted=($(printf "%s\n" "${times[@]}" | sort -n))
+    printf "%-10s %6d %8d %8d %8d\n" "$mode" "$runs" "${sorted[0]}" "${sorted[$(( runs / 2 ))]}" "${sorted[$(( runs - 1 ))]}" \
+        | tee -a "$results"
+done
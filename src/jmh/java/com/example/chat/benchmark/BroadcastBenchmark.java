@@ -0,0 +1,142 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.LocalClusterBus;
+import com.example.chat.model.Message;
+import com.example.chat.websocket.RoomEventPublisher;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.converter.ByteArrayMessageConverter;
+import org.springframework.messaging.converter.CompositeMessageConverter;
+import org.springframework.messaging.converter.MappingJackson2MessageConverter;
+import org.springframework.messaging.converter.StringMessageConverter;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.broker.SimpleBrokerMessageHandler;
+import org.springframework.messaging.support.ExecutorSubscribableChannel;
+import org.springframework.messaging.support.MessageBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One chat message fanned out through a real {@link SimpleBrokerMessageHandler}: the message event to its
+ * own room plus a notification to every other room. Compares the old per-destination conversion against
+ * {@link RoomEventPublisher}. Run with {@code -prof gc} to see allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class BroadcastBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int rooms;
+
+    @Param({"10", "100"})
+    public int subscribersPerRoom;
+
+    private final LongAdder delivered = new LongAdder();
+    private SimpleBrokerMessageHandler broker;
+    private AnnotationConfigApplicationContext context;
+    private SimpMessagingTemplate template;
+    private RoomEventPublisher publisher;
+    private ObjectMapper objectMapper;
+    private Message message;
+    private List<String> otherRooms;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        MessageChannel clientOutbound = (outbound, timeout) -> {
+            delivered.increment();
+            return true;
+        };
+        broker = new SimpleBrokerMessageHandler(new ExecutorSubscribableChannel(), clientOutbound,
+                new ExecutorSubscribableChannel(), List.of("/topic"));
+        broker.start();
+        otherRooms = new ArrayList<>();
+        for (int room = 0; room < rooms; room++) {
+            if (room > 0) {
+                otherRooms.add(RoomEventPublisher.roomTopic(room));
+            }
+            for (int subscriber = 0; subscriber < subscribersPerRoom; subscriber++) {
+                String sessionId = room + "-" + subscriber;
+                broker.handleMessage(frame(SimpMessageType.CONNECT, sessionId, null));
+                broker.handleMessage(frame(SimpMessageType.SUBSCRIBE, sessionId, RoomEventPublisher.roomTopic(room)));
+            }
+        }
+
+        MappingJackson2MessageConverter jackson = new MappingJackson2MessageConverter();
+        jackson.setObjectMapper(objectMapper);
+        template = new SimpMessagingTemplate((outbound, timeout) -> {
+            broker.handleMessage(outbound);
+            return true;
+        });
+        template.setMessageConverter(new CompositeMessageConverter(
+                List.of(new StringMessageConverter(), new ByteArrayMessageConverter(), jackson)));
+
+        context = new AnnotationConfigApplicationContext();
+        context.registerBean(SimpMessagingTemplate.class, () -> template);
+        context.registerBean(ObjectMapper.class, () -> objectMapper);
+        context.registerBean(ClusterBus.class, () -> new LocalClusterBus("benchmark"));
+        context.registerBean(RoomEventPublisher.class);
+        context.refresh();
+        publisher = context.getBean(RoomEventPublisher.class);
+
+        message = new Message();
+        message.setId(42L);
+        message.setRoomId(0L);
+        message.setUserId(7L);
+        message.setMessageText("The quick brown fox jumps over the lazy dog");
+        message.setTimestamp(LocalDateTime.now());
+    }
+
+    @TearDown
+    public void tearDown() {
+        broker.stop();
+        context.close();
+    }
+
+    /** The path handleMessage/broadcastNotification used before: Jackson per send, String-to-bytes per room. */
+    @Benchmark
+    public long convertPerDestination() throws Exception {
+        template.convertAndSend(RoomEventPublisher.roomTopic(0), Map.of("type", "message", "data", message));
+        String notification = objectMapper.writeValueAsString(Map.of("type", "notification", "data", preview()));
+        for (String destination : otherRooms) {
+            template.convertAndSend(destination, notification);
+        }
+        return delivered.sum();
+    }
+
+    @Benchmark
+    public long preSerialized() {
+        publisher.publish(RoomEventPublisher.roomTopic(0), new RoomEvent("message", message));
+        publisher.publish(otherRooms, new RoomEvent("notification", preview()));
+        return delivered.sum();
+    }
+
+    private Map<String, Object> preview() {
+        return Map.of("roomId", 0L, "roomName", "General", "messageText", "The quick brown fox ...");
+    }
+
+    private static org.springframework.messaging.Message<byte[]> frame(SimpMessageType type, String sessionId,
+                                                                        String destination) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(type);
+        accessor.setSessionId(sessionId);
+        accessor.setSubscriptionId("sub-" + sessionId);
+        accessor.setDestination(destination);
+        return MessageBuilder.createMessage(new byte[0], accessor.getMessageHeaders());
+    }
+}
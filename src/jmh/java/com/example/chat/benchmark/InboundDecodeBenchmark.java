@@ -0,0 +1,50 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.model.Message;
+import com.example.chat.websocket.InboundEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding one inbound chat frame: the old String -> Map -> convertValue(Message) path against a single
+ * typed read of {@link InboundEvent} from the frame bytes. Run with {@code -prof gc} for bytes per frame.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class InboundDecodeBenchmark {
+
+    private ObjectMapper objectMapper;
+    private byte[] frame;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        frame = "{\"type\":\"message\",\"roomId\":12,\"userId\":345,\"messageText\":\"The quick brown fox jumps over the lazy dog\"}"
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Message mapThenConvert() throws Exception {
+        String payload = new String(frame, StandardCharsets.UTF_8);
+        Map<String, Object> json = objectMapper.readValue(payload, Map.class);
+        if (!"message".equals(json.get("type"))) {
+            throw new IllegalStateException();
+        }
+        return objectMapper.convertValue(json, Message.class);
+    }
+
+    @Benchmark
+    public InboundEvent typedSinglePass() throws Exception {
+        return objectMapper.readValue(frame, InboundEvent.class);
+    }
+}
@@ -0,0 +1,63 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.model.Message;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializing one outbound chat message event, as {@code RoomEventPublisher} does once per broadcast:
+ * through a String, straight to bytes, and through a writer resolved once for {@link RoomEvent}.
+ * Run with {@code -prof gc} for bytes per event.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+@Fork(1)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class MessageSerializationBenchmark {
+
+    @Param({"40", "400"})
+    public int textLength;
+
+    private ObjectMapper objectMapper;
+    private ObjectWriter eventWriter;
+    private RoomEvent event;
+
+    @Setup
+    public void setUp() {
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        eventWriter = objectMapper.writerFor(RoomEvent.class);
+        Message message = new Message();
+        message.setId(123456L);
+        message.setRoomId(12L);
+        message.setUserId(345L);
+        message.setUsername("alice");
+        message.setSeq(9876L);
+        message.setTimestamp(LocalDateTime.now());
+        message.setMessageText("x".repeat(textLength));
+        event = new RoomEvent("message", message);
+    }
+
+    @Benchmark
+    public byte[] viaString() throws Exception {
+        return objectMapper.writeValueAsString(event).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Benchmark
+    public byte[] toBytes() throws Exception {
+        return objectMapper.writeValueAsBytes(event);
+    }
+
+    @Benchmark
+    public byte[] typedWriter() throws Exception {
+        return eventWriter.writeValueAsBytes(event);
+    }
+}
@@ -0,0 +1,74 @@
+package com.example.chat.benchmark;
+
+import com.example.chat.search.InvertedIndex;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Query latency of {@link InvertedIndex} as the number of indexed messages grows. Messages are eight words
+ * drawn from a Zipf-like 50,000-word vocabulary spread over 1,000 rooms, so "w0" is in most messages and
+ * "w40000" in very few. Tens of millions of messages need a bigger heap, e.g.
+ * {@code -Djmh.args="SearchIndexBenchmark -p messages=30000000 -jvmArgsAppend -Xmx16g"}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Xmx8g")
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SearchIndexBenchmark {
+    private static final int VOCABULARY = 50_000;
+    private static final int ROOMS = 1_000;
+    private static final int WORDS_PER_MESSAGE = 8;
+
+    @Param({"100000", "1000000", "10000000"})
+    public int messages;
+
+    private InvertedIndex index;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        index = new InvertedIndex();
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < messages; i++) {
+            text.setLength(0);
+            for (int w = 0; w < WORDS_PER_MESSAGE; w++) {
+                text.append('w').append(zipf(random)).append(' ');
+            }
+            index.add(i + 1, random.nextInt(ROOMS), text.toString());
+        }
+    }
+
+    // Rank r is drawn with probability roughly proportional to 1/r
+    private static int zipf(SplittableRandom random) {
+        return (int) Math.min(VOCABULARY - 1, Math.floor(Math.exp(random.nextDouble() * Math.log(VOCABULARY))) - 1);
+    }
+
+    @Benchmark
+    public InvertedIndex.Page commonTerm() {
+        return index.search("w0", null, null, 20);
+    }
+
+    @Benchmark
+    public InvertedIndex.Page rareTerm() {
+        return index.search("w40000", null, null, 20);
+    }
+
+    @Benchmark
+    public InvertedIndex.Page twoTermsAnd() {
+        return index.search("w3 w150", null, null, 20);
+    }
+
+    @Benchmark
+    public InvertedIndex.Page commonTermInRoom() {
+        return index.search("w0", 7L, null, 20);
+    }
+
+    @Benchmark
+    public InvertedIndex.Page noMatch() {
+        return index.search("w1 w2 w3 w4 w5", 7L, null, 20);
+    }
+}
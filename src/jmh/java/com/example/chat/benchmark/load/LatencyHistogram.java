@@ -0,0 +1,69 @@
+package com.example.chat.benchmark.load;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free log-linear histogram of microsecond latencies: exact below 128 µs, then 64 buckets per power
+ * of two (under 1.6% error). Recording is one atomic increment, so thousands of client threads can share it.
+ */
+final class LatencyHistogram {
+    private static final int LINEAR = 128;
+    private static final int PER_OCTAVE = 64;
+
+    private final AtomicLongArray counts = new AtomicLongArray(LINEAR + 64 * PER_OCTAVE);
+
+    void record(long micros) {
+        counts.incrementAndGet(index(Math.max(0, micros)));
+    }
+
+    long count() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /** Latency in microseconds below which {@code quantile} of the recorded values fall. */
+    long percentile(double quantile) {
+        long total = count();
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if (seen >= rank && counts.get(i) > 0) {
+                return midpoint(i);
+            }
+        }
+        return max();
+    }
+
+    long max() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) > 0) {
+                return midpoint(i);
+            }
+        }
+        return 0;
+    }
+
+    private static int index(long value) {
+        if (value < LINEAR) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - 6;
+        return LINEAR + (shift - 1) * PER_OCTAVE + (int) (value >>> shift) - PER_OCTAVE;
+    }
+
+    private static long midpoint(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int shift = (index - LINEAR) / PER_OCTAVE + 1;
+        long mantissa = (index - LINEAR) % PER_OCTAVE + PER_OCTAVE;
+        return (mantissa << shift) + (1L << shift) / 2;
+    }
+}
@@ -0,0 +1,363 @@
+package com.example.chat.benchmark.load;
+
+import com.example.chat.ChatApplication;
+import com.example.chat.model.ChatRoom;
+import com.example.chat.model.User;
+import com.example.chat.repository.UserRepository;
+import com.example.chat.service.ChatService;
+import com.example.chat.service.TokenService;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.converter.SimpleMessageConverter;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaders;
+import org.springframework.messaging.simp.stomp.StompSession;
+import org.springframework.messaging.simp.stomp.StompSessionHandlerAdapter;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.web.socket.WebSocketHttpHeaders;
+import org.springframework.web.socket.client.standard.StandardWebSocketClient;
+import org.springframework.web.socket.messaging.WebSocketStompClient;
+
+import java.io.File;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * End-to-end load test: starts the application against an in-memory H2 database (profile {@code loadtest}),
+ * connects {@code clients} STOMP-over-WebSocket clients spread over {@code rooms} rooms and sends chat
+ * messages at a fixed total {@code rate}; {@code format=cbor} or {@code format=smile} connects to the native
+ * endpoint and asks for binary frames instead of JSON. Every client subscribes to its room, so each message is
+ * delivered to all members of that room. Latency runs from the moment a message was scheduled to be sent
+ * (not when the sender got round to it) until a member receives it, so a stalled server shows up in the
+ * percentiles instead of hiding as a lower send rate. Results go to stdout and, as JSON, to {@code out}.
+ * <pre>
+ * mvn -Pbenchmark test-compile exec:exec -Dbench.main=com.example.chat.benchmark.load.LoadHarness \
+ *     -Djmh.args="clients=2000 rooms=20 rate=1000 duration=60" -Dbench.jvmArgs=-Xmx3g
+ * </pre>
+ */
+public final class LoadHarness {
+    // JSON quotes the text; CBOR and Smile put a length byte in front of it instead
+    private static final byte[] JSON_MARKER = "\"lt".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] BINARY_MARKER = "lt".getBytes(StandardCharsets.US_ASCII);
+
+    private final Options options;
+    private final ConfigurableApplicationContext app;
+    private final LatencyHistogram latencies = new LatencyHistogram();
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder connectFailures = new LongAdder();
+    private final AtomicReference<String> firstError = new AtomicReference<>();
+    private final List<Client> clients = new ArrayList<>();
+    private final List<Long> roomIds = new ArrayList<>();
+    // Only messages scheduled inside [measureStart, measureEnd) count
+    private volatile long measureStart = Long.MAX_VALUE;
+    private volatile long measureEnd = Long.MAX_VALUE;
+
+    private LoadHarness(Options options, ConfigurableApplicationContext app) {
+        this.options = options;
+        this.app = app;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Options options = Options.parse(args);
+        ConfigurableApplicationContext app = new SpringApplicationBuilder(ChatApplication.class)
+                .profiles("loadtest")
+                .run();
+        try {
+            new LoadHarness(options, app).run();
+        } finally {
+            app.close();
+        }
+    }
+
+    private void run() throws Exception {
+        int port = Integer.parseInt(app.getEnvironment().getRequiredProperty("local.server.port"));
+        createRoomsAndUsers();
+        // Binary frames are only offered on the native endpoint
+        connect(options.format().equals("json")
+                ? "ws://localhost:" + port + "/chat/websocket"
+                : "ws://localhost:" + port + "/chat-ws");
+        System.out.printf("Connected %d of %d clients (%d failed) in %d rooms%n",
+                clients.size() - connectFailures.intValue(), clients.size(), connectFailures.intValue(), roomIds.size());
+        Thread.sleep(1000);
+
+        long[] sentPerRoom = new long[roomIds.size()];
+        long start = System.nanoTime();
+        measureStart = start + TimeUnit.SECONDS.toNanos(options.warmup());
+        measureEnd = measureStart + TimeUnit.SECONDS.toNanos(options.duration());
+        long sent = send(start, measureEnd, sentPerRoom);
+        awaitDrain();
+
+        long measured = 0;
+        long expected = 0;
+        int[] members = new int[roomIds.size()];
+        for (Client client : clients) {
+            if (client.session != null) {
+                members[client.room]++;
+            }
+        }
+        for (int room = 0; room < roomIds.size(); room++) {
+            measured += sentPerRoom[room];
+            expected += sentPerRoom[room] * members[room];
+        }
+        report(sent, measured, expected);
+        for (Client client : clients) {
+            if (client.session != null && client.session.isConnected()) {
+                client.session.disconnect();
+            }
+        }
+    }
+
+    private void createRoomsAndUsers() {
+        ChatService chatService = app.getBean(ChatService.class);
+        UserRepository userRepository = app.getBean(UserRepository.class);
+        TokenService tokenService = app.getBean(TokenService.class);
+        // Clients never log in with it, so one bcrypt hash is enough for everyone
+        String password = app.getBean(PasswordEncoder.class).encode("load");
+        long run = System.currentTimeMillis();
+        for (int i = 0; i < options.rooms(); i++) {
+            ChatRoom room = chatService.createRoom("load-" + run + "-" + i);
+            roomIds.add(room.getId());
+        }
+        List<User> batch = new ArrayList<>();
+        for (int i = 0; i < options.clients(); i++) {
+            User user = new User();
+            user.setUsername("load-" + run + "-" + i);
+            user.setEmail("load-" + run + "-" + i + "@example.com");
+            user.setPassword(password);
+            user.setCreatedAt(LocalDateTime.now());
+            batch.add(user);
+            if (batch.size() == 1000 || i == options.clients() - 1) {
+                for (User saved : userRepository.saveAll(batch)) {
+                    int index = clients.size();
+                    clients.add(new Client(saved.getId(), index % roomIds.size(),
+                            tokenService.issue(saved.getId(), saved.getUsername())));
+                }
+                batch.clear();
+            }
+        }
+    }
+
+    private void connect(String url) throws InterruptedException {
+        WebSocketStompClient stompClient = new WebSocketStompClient(new StandardWebSocketClient());
+        stompClient.setMessageConverter(new SimpleMessageConverter());
+        Semaphore inFlight = new Semaphore(options.connectConcurrency());
+        List<CompletableFuture<StompSession>> connections = new ArrayList<>();
+        for (Client client : clients) {
+            inFlight.acquire();
+            StompHeaders headers = new StompHeaders();
+            headers.add("Authorization", "Bearer " + client.token);
+            headers.add("payload-format", options.format());
+            CompletableFuture<StompSession> connection = stompClient.connectAsync(url, new WebSocketHttpHeaders(), headers, client);
+            connection.whenComplete((session, failure) -> {
+                inFlight.release();
+                if (failure != null) {
+                    connectFailures.increment();
+                    error(failure);
+                }
+            });
+            connections.add(connection);
+        }
+        for (CompletableFuture<StompSession> connection : connections) {
+            try {
+                connection.get(30, TimeUnit.SECONDS);
+            } catch (Exception e) {
+                // Already counted
+            }
+        }
+    }
+
+    // One thread on a fixed schedule, round-robin over the connected clients
+    private long send(long start, long end, long[] sentPerRoom) {
+        List<Client> senders = clients.stream().filter(client -> client.session != null).toList();
+        if (senders.isEmpty()) {
+            throw new IllegalStateException("No client connected");
+        }
+        long interval = TimeUnit.SECONDS.toNanos(1) / options.rate();
+        long sent = 0;
+        for (long scheduled = start; scheduled < end; scheduled += interval) {
+            long wait = scheduled - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Client client = senders.get((int) (sent % senders.size()));
+            try {
+                client.send(scheduled);
+                if (scheduled >= measureStart) {
+                    sentPerRoom[client.room]++;
+                }
+                sent++;
+            } catch (Exception e) {
+                error(e);
+            }
+        }
+        return sent;
+    }
+
+    // Wait until deliveries stop arriving, at most ten seconds
+    private void awaitDrain() throws InterruptedException {
+        long last = -1;
+        for (int i = 0; i < 20 && delivered.sum() != last; i++) {
+            last = delivered.sum();
+            Thread.sleep(500);
+        }
+    }
+
+    private void report(long sent, long measured, long expected) throws Exception {
+        double seconds = options.duration();
+        long received = delivered.sum();
+        Map<String, Object> latency = new LinkedHashMap<>();
+        latency.put("p50", millis(latencies.percentile(0.50)));
+        latency.put("p90", millis(latencies.percentile(0.90)));
+        latency.put("p99", millis(latencies.percentile(0.99)));
+        latency.put("p999", millis(latencies.percentile(0.999)));
+        latency.put("max", millis(latencies.max()));
+
+        Map<String, Object> result = new LinkedHashMap<>();
+        result.put("timestamp", Instant.now().toString());
+        result.put("options", options);
+        result.put("messagesSent", sent);
+        result.put("sentPerSecond", Math.round(measured / seconds));
+        result.put("deliveriesExpected", expected);
+        result.put("deliveriesReceived", received);
+        result.put("deliveredPerSecond", Math.round(received / seconds));
+        result.put("deliveryRatio", expected == 0 ? 0 : received / (double) expected);
+        result.put("latencyMillis", latency);
+        result.put("connectFailures", connectFailures.sum());
+        result.put("errors", errors.sum());
+        result.put("firstError", firstError.get());
+
+        ObjectMapper objectMapper = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+        String json = objectMapper.writeValueAsString(result);
+        System.out.println(json);
+        File out = new File(options.out());
+        if (out.getParentFile() != null) {
+            out.getParentFile().mkdirs();
+        }
+        objectMapper.writeValue(out, result);
+        System.out.println("Results written to " + out.getAbsolutePath());
+    }
+
+    private void error(Throwable failure) {
+        errors.increment();
+        firstError.compareAndSet(null, String.valueOf(failure));
+    }
+
+    private static double millis(long micros) {
+        return micros / 1000.0;
+    }
+
+    private final class Client extends StompSessionHandlerAdapter {
+        final long userId;
+        final int room;
+        final String token;
+        volatile StompSession session;
+
+        Client(long userId, int room, String token) {
+            this.userId = userId;
+            this.room = room;
+            this.token = token;
+        }
+
+        @Override
+        public void afterConnected(StompSession session, StompHeaders connectedHeaders) {
+            String destination = "/app/room/" + roomIds.get(room);
+            session.subscribe("/topic/room/" + roomIds.get(room), this);
+            session.send(destination, "{\"type\":\"join\",\"username\":\"load\"}".getBytes(StandardCharsets.UTF_8));
+            this.session = session;
+        }
+
+        void send(long scheduled) {
+            String frame = "{\"type\":\"message\",\"userId\":" + userId + ",\"messageText\":\"lt" + scheduled + "\"}";
+            session.send("/app/room/" + roomIds.get(room), frame.getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Type getPayloadType(StompHeaders headers) {
+            return byte[].class;
+        }
+
+        @Override
+        public void handleFrame(StompHeaders headers, Object payload) {
+            long sentAt = sentAt((byte[]) payload, options.format().equals("json") ? JSON_MARKER : BINARY_MARKER);
+            if (sentAt >= measureStart && sentAt < measureEnd) {
+                latencies.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - sentAt));
+                delivered.increment();
+            }
+        }
+
+        @Override
+        public void handleException(StompSession session, StompCommand command, StompHeaders headers, byte[] payload, Throwable exception) {
+            error(exception);
+        }
+
+        @Override
+        public void handleTransportError(StompSession session, Throwable exception) {
+            error(exception);
+        }
+    }
+
+    // The send time travels as "lt<nanoTime>" in the message text, found without parsing the JSON
+    private static long sentAt(byte[] payload, byte[] marker) {
+        outer:
+        for (int i = 0; i + marker.length < payload.length; i++) {
+            for (int j = 0; j < marker.length; j++) {
+                if (payload[i + j] != marker[j]) {
+                    continue outer;
+                }
+            }
+            long value = 0;
+            int k = i + marker.length;
+            boolean digits = false;
+            boolean negative = k < payload.length && payload[k] == '-';
+            if (negative) {
+                k++;
+            }
+            for (; k < payload.length && payload[k] >= '0' && payload[k] <= '9'; k++) {
+                value = value * 10 + (payload[k] - '0');
+                digits = true;
+            }
+            if (digits) {
+                return negative ? -value : value;
+            }
+        }
+        return Long.MIN_VALUE;
+    }
+
+    record Options(int clients, int rooms, int rate, int warmup, int duration, int connectConcurrency, String format, String out) {
+        static Options parse(String[] args) {
+            Map<String, String> values = new LinkedHashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) {
+                    throw new IllegalArgumentException("Expected key=value, got " + arg);
+                }
+                values.put(arg.substring(0, eq), arg.substring(eq + 1));
+            }
+            return new Options(
+                    Integer.parseInt(values.getOrDefault("clients", "1000")),
+                    Integer.parseInt(values.getOrDefault("rooms", "10")),
+                    Integer.parseInt(values.getOrDefault("rate", "500")),
+                    Integer.parseInt(values.getOrDefault("warmup", "10")),
+                    Integer.parseInt(values.getOrDefault("duration", "30")),
+                    Integer.parseInt(values.getOrDefault("connectConcurrency", "64")),
+                    values.getOrDefault("format", "json").toLowerCase(Locale.ROOT),
+                    values.getOrDefault("out", "target/load-results.json"));
+        }
+    }
+}
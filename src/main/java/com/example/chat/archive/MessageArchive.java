@@ -0,0 +1,331 @@
+package com.example.chat.archive;
+
+import com.example.chat.model.Message;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Cold tier for messages that left the hot {@code messages} table. Each room has one append-only segment
+ * per month, {@code <dir>/<roomId>/<yyyy-MM>.seg}, made of independently gzipped batches ("members"),
+ * plus a {@code .idx} file with one line per member: first id, last id, offset, length and count.
+ * A member is only listed once its bytes are on disk, so a crash mid-append leaves unreferenced bytes
+ * rather than a broken segment. Readers only decompress the members a page actually needs. Members start
+ * with their format version as a negative number; the first format had none and started with the count.
+ */
+@Component
+public class MessageArchive {
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchive.class);
+    private static final DateTimeFormatter MONTH = DateTimeFormatter.ofPattern("yyyy-MM");
+    // Version 2 added the edited and deleted times
+    private static final int FORMAT_VERSION = 2;
+
+    @Value("${chat.archive.dir:data/archive}")
+    private String dir;
+
+    private Path root;
+    // roomId -> members of all its segments, ordered by id; reloaded when another node appended
+    private final Map<Long, RoomIndex> rooms = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        root = Paths.get(dir).toAbsolutePath();
+    }
+
+    public boolean hasMessages(Long roomId) {
+        return !index(roomId).members.isEmpty();
+    }
+
+    /** Highest archived message id of the room, or 0. */
+    public long maxArchivedId(Long roomId) {
+        List<Member> members = index(roomId).members;
+        return members.isEmpty() ? 0 : members.get(members.size() - 1).lastId;
+    }
+
+    /**
+     * Highest archived sequence number of the room, or 0. A room's messages are saved one at a time, so seq
+     * follows id order and only the newest member has to be read.
+     */
+    public long maxArchivedSeq(Long roomId) {
+        List<Member> members = index(roomId).members;
+        if (members.isEmpty()) {
+            return 0;
+        }
+        long max = 0;
+        for (Message message : read(members.get(members.size() - 1))) {
+            if (message.getSeq() != null) {
+                max = Math.max(max, message.getSeq());
+            }
+        }
+        return max;
+    }
+
+    /** Appends messages of one room, sorted by id and all newer than {@link #maxArchivedId}. */
+    public synchronized void append(Long roomId, List<Message> batch) throws IOException {
+        Map<String, List<Message>> byMonth = new TreeMap<>();
+        for (Message message : batch) {
+            byMonth.computeIfAbsent(MONTH.format(message.getTimestamp()), month -> new ArrayList<>()).add(message);
+        }
+        Path roomDir = root.resolve(String.valueOf(roomId));
+        Files.createDirectories(roomDir);
+        for (Map.Entry<String, List<Message>> month : byMonth.entrySet()) {
+            List<Message> messages = month.getValue();
+            byte[] member = encode(messages);
+            Path segment = roomDir.resolve(month.getKey() + ".seg");
+            long offset;
+            try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                offset = channel.size();
+                channel.write(ByteBuffer.wrap(member), offset);
+                channel.force(true);
+            }
+            String line = messages.get(0).getId() + " " + messages.get(messages.size() - 1).getId() + " "
+                    + offset + " " + member.length + " " + messages.size() + "\n";
+            try (FileChannel channel = FileChannel.open(roomDir.resolve(month.getKey() + ".idx"),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                channel.write(ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII)));
+                channel.force(true);
+            }
+        }
+        rooms.remove(roomId);
+    }
+
+    /**
+     * One page in ascending id order: the {@code limit} newest messages below {@code before} (or overall),
+     * or with {@code after} the {@code limit} oldest messages above it.
+     */
+    public List<Message> page(Long roomId, Long before, Long after, int limit) {
+        List<Member> members = index(roomId).members;
+        List<Message> page = new ArrayList<>(limit);
+        if (after != null) {
+            for (int i = 0; i < members.size() && page.size() < limit; i++) {
+                if (members.get(i).lastId > after) {
+                    for (Message message : read(members.get(i))) {
+                        if (message.getId() > after && page.size() < limit) {
+                            page.add(message);
+                        }
+                    }
+                }
+            }
+            return page;
+        }
+        for (int i = members.size() - 1; i >= 0 && page.size() < limit; i--) {
+            if (before == null || members.get(i).firstId < before) {
+                List<Message> decoded = read(members.get(i));
+                for (int j = decoded.size() - 1; j >= 0 && page.size() < limit; j--) {
+                    if (before == null || decoded.get(j).getId() < before) {
+                        page.add(decoded.get(j));
+                    }
+                }
+            }
+        }
+        Collections.reverse(page);
+        return page;
+    }
+
+    public List<Message> findByIds(Long roomId, Collection<Long> ids) {
+        List<Message> found = new ArrayList<>();
+        for (Member member : index(roomId).members) {
+            if (ids.stream().anyMatch(id -> id >= member.firstId && id <= member.lastId)) {
+                for (Message message : read(member)) {
+                    if (ids.contains(message.getId())) {
+                        found.add(message);
+                    }
+                }
+            }
+        }
+        return found;
+    }
+
+    /** Every archived message of the room, oldest first. */
+    public void forEach(Long roomId, Consumer<Message> consumer) {
+        for (Member member : index(roomId).members) {
+            read(member).forEach(consumer);
+        }
+    }
+
+    /** Every archived message, room by room. */
+    public void forEachMessage(Consumer<Message> consumer) {
+        for (Long roomId : roomIds()) {
+            forEach(roomId, consumer);
+        }
+    }
+
+    private List<Long> roomIds() {
+        List<Long> ids = new ArrayList<>();
+        if (!Files.isDirectory(root)) {
+            return ids;
+        }
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(root)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                if (Files.isDirectory(entry) && name.chars().allMatch(Character::isDigit)) {
+                    ids.add(Long.valueOf(name));
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        ids.sort(Comparator.naturalOrder());
+        return ids;
+    }
+
+    private RoomIndex index(Long roomId) {
+        Path roomDir = root.resolve(String.valueOf(roomId));
+        long stamp = stamp(roomDir);
+        RoomIndex cached = rooms.get(roomId);
+        if (cached != null && cached.stamp == stamp) {
+            return cached;
+        }
+        RoomIndex loaded = load(roomDir, stamp);
+        rooms.put(roomId, loaded);
+        return loaded;
+    }
+
+    // Total size of the room's .idx files; changes whenever any node appends a member
+    private static long stamp(Path roomDir) {
+        if (!Files.isDirectory(roomDir)) {
+            return -1;
+        }
+        long total = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(roomDir, "*.idx")) {
+            for (Path file : files) {
+                total += Files.size(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return total;
+    }
+
+    private static RoomIndex load(Path roomDir, long stamp) {
+        List<Member> members = new ArrayList<>();
+        if (stamp >= 0) {
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(roomDir, "*.idx")) {
+                for (Path file : files) {
+                    Path segment = roomDir.resolve(file.getFileName().toString().replace(".idx", ".seg"));
+                    for (String line : Files.readAllLines(file, StandardCharsets.US_ASCII)) {
+                        String[] fields = line.trim().split(" ");
+                        if (fields.length == 5) {
+                            members.add(new Member(segment, Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+                                    Long.parseLong(fields[2]), Integer.parseInt(fields[3])));
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        members.sort(Comparator.comparingLong(member -> member.firstId));
+        return new RoomIndex(stamp, members);
+    }
+
+    private static byte[] encode(List<Message> messages) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(new GZIPOutputStream(bytes))) {
+            out.writeInt(-FORMAT_VERSION);
+            out.writeInt(messages.size());
+            for (Message message : messages) {
+                out.writeLong(message.getId());
+                out.writeLong(message.getRoomId());
+                out.writeLong(message.getUserId());
+                out.writeLong(message.getSeq() != null ? message.getSeq() : -1);
+                writeTime(out, message.getTimestamp());
+                byte[] text = message.getMessageText().getBytes(StandardCharsets.UTF_8);
+                out.writeInt(text.length);
+                out.write(text);
+                out.writeBoolean(message.getEditedAt() != null);
+                if (message.getEditedAt() != null) {
+                    writeTime(out, message.getEditedAt());
+                }
+                out.writeBoolean(message.getDeletedAt() != null);
+                if (message.getDeletedAt() != null) {
+                    writeTime(out, message.getDeletedAt());
+                }
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<Message> read(Member member) {
+        byte[] compressed = new byte[member.length];
+        try (FileChannel channel = FileChannel.open(member.segment, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(compressed);
+            while (buffer.hasRemaining() && channel.read(buffer, member.offset + buffer.position()) > 0) {
+                // keep reading until the member is complete
+            }
+            try (DataInputStream in = new DataInputStream(new GZIPInputStream(new ByteArrayInputStream(compressed)))) {
+                int first = in.readInt();
+                int version = first < 0 ? -first : 1;
+                int count = version > 1 ? in.readInt() : first;
+                List<Message> messages = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    Message message = new Message();
+                    message.setId(in.readLong());
+                    message.setRoomId(in.readLong());
+                    message.setUserId(in.readLong());
+                    long seq = in.readLong();
+                    message.setSeq(seq >= 0 ? seq : null);
+                    message.setTimestamp(readTime(in));
+                    byte[] text = new byte[in.readInt()];
+                    in.readFully(text);
+                    message.setMessageText(new String(text, StandardCharsets.UTF_8));
+                    if (version >= 2) {
+                        message.setEditedAt(in.readBoolean() ? readTime(in) : null);
+                        message.setDeletedAt(in.readBoolean() ? readTime(in) : null);
+                    }
+                    messages.add(message);
+                }
+                return messages;
+            }
+        } catch (IOException e) {
+            logger.error("Error reading archive segment {} at {}: {}", member.segment, member.offset, e.getMessage());
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+        out.writeInt(time.getNano());
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC);
+    }
+
+    private record Member(Path segment, long firstId, long lastId, long offset, int length) {
+    }
+
+    private record RoomIndex(long stamp, List<Member> members) {
+    }
+}
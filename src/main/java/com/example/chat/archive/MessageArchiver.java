@@ -0,0 +1,140 @@
+package com.example.chat.archive;
+
+import com.example.chat.model.Message;
+import com.example.chat.exception.CustomException;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.websocket.RoomSerialExecutor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Moves messages older than {@code hot-retention-days} from the {@code messages} table into the
+ * {@link MessageArchive}, room by room in id order: a batch is written and synced to its segment first
+ * and only then deleted from the table, so a crash in between at worst leaves a batch in both tiers,
+ * which the next run notices and just deletes. A room's newest message always stays in the table, so its
+ * sequence number and last activity are found there after a restart. Each batch runs on the room's serial
+ * executor, like edits and deletes, so none of them lands between a batch being archived and deleted. Runs on
+ * its own thread so it never delays the scheduler.
+ * In a cluster enable it on one node only and point every node's {@code chat.archive.dir} at shared storage.
+ */
+@Component
+public class MessageArchiver {
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiver.class);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private RoomSerialExecutor roomExecutor;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.archive.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.archive.hot-retention-days:90}")
+    private int hotRetentionDays;
+
+    @Value("${chat.archive.batch-size:1000}")
+    private int batchSize;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private ExecutorService worker;
+    private Counter archived;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            worker = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("message-archiver").factory());
+            archived = Counter.builder("chat.archive.messages").register(meterRegistry);
+            logger.info("Archiving messages older than {} days", hotRetentionDays);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.archive.interval-ms:3600000}", initialDelayString = "${chat.archive.initial-delay-ms:60000}")
+    public void schedule() {
+        if (enabled && running.compareAndSet(false, true)) {
+            worker.execute(() -> {
+                try {
+                    archiveOlderThan(LocalDateTime.now().minusDays(hotRetentionDays));
+                } catch (Exception e) {
+                    logger.error("Error archiving messages: {}", e.getMessage(), e);
+                } finally {
+                    running.set(false);
+                }
+            });
+        }
+    }
+
+    void archiveOlderThan(LocalDateTime cutoff) throws Exception {
+        long total = 0;
+        for (Long roomId : messageRepository.findRoomIdsWithMessagesBefore(cutoff)) {
+            List<Message> newest = messageRepository.findByRoomIdOrderByIdDesc(roomId, Limit.of(1));
+            long keep = newest.isEmpty() ? Long.MAX_VALUE : newest.get(0).getId();
+            try {
+                Batch batch;
+                do {
+                    batch = roomExecutor.executeAndWait(String.valueOf(roomId), () -> archiveBatch(roomId, cutoff, keep));
+                    archived.increment(batch.archived());
+                    total += batch.archived();
+                } while (batch.more());
+            } catch (CustomException e) {
+                // The room's queue is full; its turn comes again with the next run
+                logger.warn("Skipping room {} this run: {}", roomId, e.getMessage());
+            }
+        }
+        if (total > 0) {
+            logger.info("Archived {} messages older than {}", total, cutoff);
+        }
+    }
+
+    private Batch archiveBatch(Long roomId, LocalDateTime cutoff, long keep) throws Exception {
+        List<Message> batch = messageRepository.findByRoomIdAndTimestampBeforeOrderByIdAsc(roomId, cutoff, Limit.of(batchSize))
+                .stream()
+                .filter(message -> message.getId() < keep)
+                .toList();
+        if (batch.isEmpty()) {
+            return new Batch(0, false);
+        }
+        long alreadyArchived = messageArchive.maxArchivedId(roomId);
+        // Deleted messages are archived too, without text, so the room's seq numbers keep no gaps
+        List<Message> fresh = batch.stream()
+                .filter(message -> message.getId() > alreadyArchived)
+                .toList();
+        if (!fresh.isEmpty()) {
+            messageArchive.append(roomId, fresh);
+        }
+        messageRepository.deleteAllByIdInBatch(batch.stream().map(Message::getId).toList());
+        return new Batch(fresh.size(), batch.size() == batchSize);
+    }
+
+    /** One batch's outcome: messages appended to the archive, and whether a full batch was moved. */
+    private record Batch(int archived, boolean more) {
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (worker != null) {
+            worker.shutdown();
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.chat.cluster;
+
+import java.util.function.Consumer;
+
+/**
+ * Node-to-node pub/sub used to share room events and presence between chat-app instances.
+ * Events published by a node are delivered to every other node, never back to the publisher.
+ */
+public interface ClusterBus extends AutoCloseable {
+
+    String nodeId();
+
+    /** {@code false} for a standalone node, where publishing is a no-op. */
+    boolean isClustered();
+
+    void publish(ClusterEvent event);
+
+    void subscribe(Consumer<ClusterEvent> listener);
+
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.chat.cluster;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * What one node tells its peers. Only the fields relevant to the {@link Kind} are set.
+ */
+public record ClusterEvent(String origin,
+                           Kind kind,
+                           List<String> destinations,
+                           byte[] payload,
+                           String roomId,
+                           String username,
+                           boolean present,
+                           Map<String, Set<String>> presence,
+                           Map<String, String> headers) {
+
+    public enum Kind {
+        /** A pre-serialized event, with its STOMP {@code headers}, for local subscribers of {@code destinations}. */
+        BROADCAST,
+        /** A saved chat message ({@code payload} is its JSON) so peers can keep their caches current. */
+        MESSAGE,
+        /** {@code username} started or stopped being present in {@code roomId} on the origin node. */
+        PRESENCE,
+        /** Full presence of the origin node; replaces whatever peers knew about it. */
+        PRESENCE_SNAPSHOT,
+        /** {@code username} follows {@code roomId}. */
+        FOLLOW,
+        /** {@code username} started ({@code present}) or stopped typing in {@code roomId} on the origin node. */
+        TYPING
+    }
+
+    public static ClusterEvent broadcast(String origin, List<String> destinations, byte[] payload, Map<String, String> headers) {
+        return new ClusterEvent(origin, Kind.BROADCAST, destinations, payload, null, null, false, null, headers);
+    }
+
+    public static ClusterEvent message(String origin, byte[] messageJson) {
+        return new ClusterEvent(origin, Kind.MESSAGE, null, messageJson, null, null, false, null, null);
+    }
+
+    public static ClusterEvent presence(String origin, String roomId, String username, boolean present) {
+        return new ClusterEvent(origin, Kind.PRESENCE, null, null, roomId, username, present, null, null);
+    }
+
+    public static ClusterEvent presenceSnapshot(String origin, Map<String, Set<String>> presence) {
+        return new ClusterEvent(origin, Kind.PRESENCE_SNAPSHOT, null, null, null, null, false, presence, null);
+    }
+
+    public static ClusterEvent follow(String origin, String roomId, String username) {
+        return new ClusterEvent(origin, Kind.FOLLOW, null, null, roomId, username, true, null, null);
+    }
+
+    public static ClusterEvent typing(String origin, String roomId, String username, boolean typing) {
+        return new ClusterEvent(origin, Kind.TYPING, null, null, roomId, username, typing, null, null);
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.chat.cluster;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Full-mesh bus over plain HTTP: every node POSTs batches of events to
+ * {@code <peer>/internal/cluster/events} on each of its configured peers. Each peer has its own bounded
+ * queue and sender thread, so a slow or dead peer neither blocks publishers nor delays the others; when
+ * a peer's queue is full, events for it are dropped (presence heals with the next snapshot).
+ */
+public class HttpClusterBus implements ClusterBus {
+    private static final Logger logger = LoggerFactory.getLogger(HttpClusterBus.class);
+    public static final String SECRET_HEADER = "X-Cluster-Secret";
+    private static final int MAX_BATCH = 256;
+
+    private final String nodeId;
+    private final String secret;
+    private final ObjectMapper objectMapper;
+    private final HttpClient client = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(2))
+            .build();
+    private final List<Consumer<ClusterEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final List<PeerSender> senders = new ArrayList<>();
+    private volatile boolean running = true;
+
+    public HttpClusterBus(String nodeId, List<String> peers, String secret, int queueCapacity, ObjectMapper objectMapper) {
+        this.nodeId = nodeId;
+        this.secret = secret;
+        this.objectMapper = objectMapper;
+        for (String peer : peers) {
+            PeerSender sender = new PeerSender(URI.create(peer.replaceAll("/+$", "") + "/internal/cluster/events"), queueCapacity);
+            senders.add(sender);
+            Thread.ofPlatform().daemon().name("cluster-send-" + senders.size()).start(sender);
+        }
+        logger.info("Cluster node {} publishing to peers {}", nodeId, peers);
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return true;
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+        for (PeerSender sender : senders) {
+            if (!sender.queue.offer(event)) {
+                logger.warn("Cluster queue for {} is full, dropping {} event", sender.uri, event.kind());
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEvent> listener) {
+        listeners.add(listener);
+    }
+
+    // Compares in constant time so the response time tells nothing about how much of a guess was right
+    public boolean acceptsSecret(String candidate) {
+        return candidate != null && MessageDigest.isEqual(
+                secret.getBytes(StandardCharsets.UTF_8), candidate.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Entry point for batches POSTed by peers. */
+    public void receive(List<ClusterEvent> events) {
+        for (ClusterEvent event : events) {
+            if (nodeId.equals(event.origin())) {
+                continue;
+            }
+            for (Consumer<ClusterEvent> listener : listeners) {
+                try {
+                    listener.accept(event);
+                } catch (Exception e) {
+                    logger.error("Cluster listener failed for {} event: {}", event.kind(), e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+    }
+
+    private final class PeerSender implements Runnable {
+        private final URI uri;
+        private final BlockingQueue<ClusterEvent> queue;
+
+        PeerSender(URI uri, int capacity) {
+            this.uri = uri;
+            this.queue = new LinkedBlockingQueue<>(capacity);
+        }
+
+        @Override
+        public void run() {
+            List<ClusterEvent> batch = new ArrayList<>(MAX_BATCH);
+            while (running) {
+                try {
+                    ClusterEvent first = queue.poll(500, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    queue.drainTo(batch, MAX_BATCH - 1);
+                    send(batch);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (Exception e) {
+                    logger.warn("Dropped {} cluster events for {}: {}", batch.size(), uri, e.getMessage());
+                } finally {
+                    batch.clear();
+                }
+            }
+        }
+
+        private void send(List<ClusterEvent> batch) throws Exception {
+            HttpRequest request = HttpRequest.newBuilder(uri)
+                    .timeout(Duration.ofSeconds(5))
+                    .header("Content-Type", "application/json")
+                    .header(SECRET_HEADER, secret)
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(batch)))
+                    .build();
+            HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() >= 300) {
+                throw new IllegalStateException("peer answered " + response.statusCode());
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.chat.cluster;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+/**
+ * Connects every application context in the same JVM that uses the same cluster name. Meant for running
+ * several nodes side by side in one test JVM; each node receives events in order on its own thread,
+ * much like it would from a socket.
+ */
+public class InJvmClusterBus implements ClusterBus {
+    private static final Logger logger = LoggerFactory.getLogger(InJvmClusterBus.class);
+    private static final Map<String, List<InJvmClusterBus>> CLUSTERS = new ConcurrentHashMap<>();
+
+    private final String clusterName;
+    private final String nodeId;
+    private final List<Consumer<ClusterEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService inbox;
+
+    private InJvmClusterBus(String clusterName, String nodeId) {
+        this.clusterName = clusterName;
+        this.nodeId = nodeId;
+        this.inbox = Executors.newSingleThreadExecutor(Thread.ofPlatform().daemon().name("cluster-" + nodeId).factory());
+    }
+
+    /** A bus for a new node, registered with the others of the cluster only once fully constructed. */
+    public static InJvmClusterBus join(String clusterName, String nodeId) {
+        InJvmClusterBus bus = new InJvmClusterBus(clusterName, nodeId);
+        CLUSTERS.computeIfAbsent(clusterName, name -> new CopyOnWriteArrayList<>()).add(bus);
+        return bus;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return true;
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+        for (InJvmClusterBus peer : CLUSTERS.getOrDefault(clusterName, List.of())) {
+            if (peer != this) {
+                peer.inbox.execute(() -> peer.deliver(event));
+            }
+        }
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEvent> listener) {
+        listeners.add(listener);
+    }
+
+    private void deliver(ClusterEvent event) {
+        for (Consumer<ClusterEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (Exception e) {
+                logger.error("Cluster listener failed on node {}: {}", nodeId, e.getMessage(), e);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        CLUSTERS.getOrDefault(clusterName, List.of()).remove(this);
+        inbox.shutdown();
+    }
+}
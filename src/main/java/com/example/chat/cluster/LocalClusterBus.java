@@ -0,0 +1,30 @@
+package com.example.chat.cluster;
+
+import java.util.function.Consumer;
+
+/** A cluster of one: nothing is sent and nothing arrives. */
+public class LocalClusterBus implements ClusterBus {
+    private final String nodeId;
+
+    public LocalClusterBus(String nodeId) {
+        this.nodeId = nodeId;
+    }
+
+    @Override
+    public String nodeId() {
+        return nodeId;
+    }
+
+    @Override
+    public boolean isClustered() {
+        return false;
+    }
+
+    @Override
+    public void publish(ClusterEvent event) {
+    }
+
+    @Override
+    public void subscribe(Consumer<ClusterEvent> listener) {
+    }
+}
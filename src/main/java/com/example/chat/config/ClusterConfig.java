@@ -0,0 +1,57 @@
+package com.example.chat.config;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.HttpClusterBus;
+import com.example.chat.cluster.InJvmClusterBus;
+import com.example.chat.cluster.LocalClusterBus;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.util.StringUtils;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+@Configuration
+public class ClusterConfig {
+
+    @Value("${chat.cluster.mode:none}")
+    private String mode;
+
+    @Value("${chat.cluster.node-id:}")
+    private String nodeId;
+
+    @Value("${chat.cluster.name:chat}")
+    private String clusterName;
+
+    @Value("${chat.cluster.peers:}")
+    private String peers;
+
+    @Value("${chat.cluster.secret:}")
+    private String secret;
+
+    @Value("${chat.cluster.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Bean
+    public ClusterBus clusterBus(ObjectMapper objectMapper) {
+        String node = StringUtils.hasText(nodeId) ? nodeId : UUID.randomUUID().toString();
+        return switch (mode) {
+            case "none" -> new LocalClusterBus(node);
+            case "in-jvm" -> InJvmClusterBus.join(clusterName, node);
+            case "http" -> {
+                if (!StringUtils.hasText(secret)) {
+                    throw new IllegalStateException("chat.cluster.secret must be set when chat.cluster.mode=http");
+                }
+                List<String> peerUrls = Arrays.stream(peers.split(","))
+                        .map(String::trim)
+                        .filter(StringUtils::hasText)
+                        .toList();
+                yield new HttpClusterBus(node, peerUrls, secret, queueCapacity, objectMapper);
+            }
+            default -> throw new IllegalStateException("Unknown chat.cluster.mode: " + mode);
+        };
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.chat.config;
+
+import com.example.chat.websocket.ClusterPresence;
+import com.example.chat.websocket.ClusterRelay;
+import org.springframework.boot.LazyInitializationExcludeFilter;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.MethodIntrospector;
+import org.springframework.core.annotation.AnnotatedElementUtils;
+import org.springframework.scheduling.annotation.Scheduled;
+
+/**
+ * With {@code spring.main.lazy-initialization} on (the faststart profile) beans are created on first use.
+ * Some beans are never "used" by anyone and must still start: a bean's scheduled jobs only run once the bean
+ * exists, and the cluster listeners have to subscribe before the first event from another node arrives.
+ */
+@Configuration
+public class StartupConfig {
+
+    // Static: consulted by a bean factory post-processor, before regular beans exist
+    @Bean
+    static LazyInitializationExcludeFilter eagerBackgroundBeans() {
+        LazyInitializationExcludeFilter clusterListeners =
+                LazyInitializationExcludeFilter.forBeanTypes(ClusterRelay.class, ClusterPresence.class);
+        return (beanName, definition, beanType) -> beanType != null
+                && (clusterListeners.isExcluded(beanName, definition, beanType) || hasScheduledMethods(beanType));
+    }
+
+    private static boolean hasScheduledMethods(Class<?> beanType) {
+        return !MethodIntrospector.selectMethods(beanType, (MethodIntrospector.MetadataLookup<Scheduled>) method ->
+                AnnotatedElementUtils.findMergedAnnotation(method, Scheduled.class)).isEmpty();
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.chat.config;
+
+import com.example.chat.service.TokenService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Authenticates REST requests carrying {@code Authorization: Bearer <token>}. Requests without a valid
+ * token pass through unauthenticated and are then rejected by the authorization rules where required.
+ */
+public class TokenAuthenticationFilter extends OncePerRequestFilter {
+    private final TokenService tokenService;
+
+    public TokenAuthenticationFilter(TokenService tokenService) {
+        this.tokenService = tokenService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        TokenService.Claims claims = tokenService.verify(TokenService.bearer(request.getHeader(HttpHeaders.AUTHORIZATION)));
+        if (claims != null) {
+            UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                    claims.username(), null, AuthorityUtils.createAuthorityList("ROLE_USER"));
+            authentication.setDetails(claims);
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+        chain.doFilter(request, response);
+    }
+}
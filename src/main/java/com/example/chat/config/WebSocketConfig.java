@@ -1,25 +1,111 @@
 package com.example.chat.config;
 
+import com.example.chat.websocket.BinaryFrameInterceptor;
+import com.example.chat.websocket.InboundRateLimiter;
+import com.example.chat.websocket.OutboundBackpressure;
+import com.example.chat.websocket.StompPrincipalInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.messaging.simp.config.ChannelRegistration;
 import org.springframework.messaging.simp.config.MessageBrokerRegistry;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.web.socket.config.annotation.EnableWebSocketMessageBroker;
 import org.springframework.web.socket.config.annotation.StompEndpointRegistry;
 import org.springframework.web.socket.config.annotation.WebSocketMessageBrokerConfigurer;
+import org.springframework.web.socket.config.annotation.WebSocketTransportRegistration;
+import org.springframework.web.socket.server.standard.ServletServerContainerFactoryBean;
 
 @Configuration
 @EnableWebSocketMessageBroker
 public class WebSocketConfig implements WebSocketMessageBrokerConfigurer {
+    @Autowired
+    private StompPrincipalInterceptor principalInterceptor;
+
+    @Autowired
+    private OutboundBackpressure outboundBackpressure;
+
+    @Autowired
+    private BinaryFrameInterceptor binaryFrameInterceptor;
+
+    @Autowired
+    private InboundRateLimiter rateLimiter;
+
+    // Same switch Spring Boot uses for Tomcat and the application task executor
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    @Value("${chat.websocket.virtual-channel-threads:256}")
+    private int virtualChannelThreads;
+
+    @Value("${chat.websocket.message-size-limit:65536}")
+    private int messageSizeLimit;
+
     @Override
     public void configureMessageBroker(MessageBrokerRegistry config) {
-        config.enableSimpleBroker("/topic"); // Broker for subscriptions (e.g., /topic/room/{roomId})
+        config.enableSimpleBroker("/topic", "/queue"); // Room topics (/topic/room/{roomId}) and per-user queues
         config.setApplicationDestinationPrefixes("/app"); // Prefix for client messages
+        config.setUserDestinationPrefix("/user"); // e.g. /user/queue/notifications
+        config.setPreservePublishOrder(true); // A session must see a room's messages in the order they were sent
+    }
+
+    @Override
+    public void configureClientInboundChannel(ChannelRegistration registration) {
+        // The rate limiter runs on the receiving thread, so throttled frames never reach the executor
+        registration.interceptors(principalInterceptor, binaryFrameInterceptor, rateLimiter);
+        if (virtualThreads) {
+            registration.taskExecutor(virtualThreadExecutor("ws-inbound-"));
+        }
+    }
+
+    @Override
+    public void configureClientOutboundChannel(ChannelRegistration registration) {
+        registration.interceptors(binaryFrameInterceptor);
+        if (virtualThreads) {
+            registration.taskExecutor(virtualThreadExecutor("ws-outbound-"));
+        }
+    }
+
+    @Override
+    public void configureWebSocketTransport(WebSocketTransportRegistration registration) {
+        registration.setMessageSizeLimit(messageSizeLimit); // Largest inbound STOMP frame
+        // Spring's own per-session buffer only sees our decorator, which never blocks; the real
+        // limits and the overflow policy are applied in OutboundSessionDecorator
+        registration.setSendTimeLimit(outboundBackpressure.getSendTimeLimitMs());
+        registration.setSendBufferSizeLimit(outboundBackpressure.getBufferSizeLimit());
+        registration.addDecoratorFactory(outboundBackpressure);
     }
 
     @Override
     public void registerStompEndpoints(StompEndpointRegistry registry) {
+        registry.setPreserveReceiveOrder(true); // Frames of one session reach the handler in order
         registry.addEndpoint("/chat")
                 .setAllowedOriginPatterns("*")
 //                .setAllowedOrigins("http://localhost:8080")
                 .withSockJS();
+        // Plain WebSocket for clients that have it: no SockJS framing, and binary frames on request
+        registry.addEndpoint("/chat-ws")
+                .setAllowedOriginPatterns("*")
+                .addInterceptors(binaryFrameInterceptor);
+    }
+
+    // The container's default 8 KB buffers would close the socket on any frame between 8 KB and the STOMP limit
+    @Bean
+    public ServletServerContainerFactoryBean webSocketContainer() {
+        ServletServerContainerFactoryBean container = new ServletServerContainerFactoryBean();
+        container.setMaxTextMessageBufferSize(messageSizeLimit);
+        container.setMaxBinaryMessageBufferSize(messageSizeLimit);
+        return container;
+    }
+
+    // Spring 6.1 channels only accept a ThreadPoolTaskExecutor, so we give it virtual worker threads
+    private ThreadPoolTaskExecutor virtualThreadExecutor(String prefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setThreadFactory(Thread.ofVirtual().name(prefix, 0).factory());
+        executor.setCorePoolSize(virtualChannelThreads);
+        executor.setMaxPoolSize(virtualChannelThreads);
+        executor.setAllowCoreThreadTimeOut(true);
+        return executor;
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,19 @@
 package com.example.chat.controller;
 
 import com.example.chat.exception.CustomException;
+import com.example.chat.model.AuthResponse;
 import com.example.chat.model.User;
 import com.example.chat.service.AuthService;
+import com.example.chat.service.TokenService;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/auth")
 public class AuthController {
@@ -18,11 +23,11 @@ public class AuthController {
     private AuthService authService;
 
     @PostMapping("/register")
-    public ResponseEntity<User> register(@RequestBody User user) {
+    public ResponseEntity<AuthResponse> register(@RequestBody User user) {
         try {
             User registeredUser = authService.registerUser(user.getUsername(), user.getEmail(), user.getPassword());
-            logger.info("registration conpleted for : {} user",user);
-            return ResponseEntity.ok(registeredUser);
+            logger.debug("registration conpleted for : {} user", user.getUsername());
+            return ResponseEntity.ok(authService.session(registeredUser));
         } catch (CustomException e) {
             logger.warn("Registration error: {}", e.getMessage());
             return ResponseEntity.status(e.getStatusCode()).body(null);
@@ -33,11 +38,11 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<User> login(@RequestBody User user) {
+    public ResponseEntity<AuthResponse> login(@RequestBody User user) {
         try {
             User loggedInUser = authService.loginUser(user.getUsername(), user.getPassword());
-            logger.info("Login Sucessful for user {} ",user);
-            return ResponseEntity.ok(loggedInUser);
+            logger.debug("Login Sucessful for user {} ", user.getUsername());
+            return ResponseEntity.ok(authService.session(loggedInUser));
         } catch (CustomException e) {
             logger.warn("Login error: {}", e.getMessage());
             return ResponseEntity.status(e.getStatusCode()).body(null);
@@ -46,5 +51,26 @@ public class AuthController {
             return ResponseEntity.status(500).body(null);
         }
     }
-}
 
+    // Cheap "is this name free" check for the registration form; registration itself stays authoritative
+    @GetMapping("/available")
+    public ResponseEntity<Map<String, Object>> available(@RequestParam String username) {
+        try {
+            return ResponseEntity.ok(Map.of("username", username, "available", authService.isUsernameAvailable(username)));
+        } catch (Exception e) {
+            logger.error("Error checking username {}: {}", username, e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    // Lets a client with a stored token skip the password round trip; the response carries a renewed token
+    @GetMapping("/session")
+    public ResponseEntity<AuthResponse> session(@RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        try {
+            return ResponseEntity.ok(authService.resume(TokenService.bearer(authorization)));
+        } catch (CustomException e) {
+            logger.debug("Session check failed: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        }
+    }
+}
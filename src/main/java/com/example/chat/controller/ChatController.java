@@ -3,16 +3,28 @@ package com.example.chat.controller;
 import com.example.chat.exception.CustomException;
 import com.example.chat.model.ChatRoom;
 import com.example.chat.model.Message;
-import com.example.chat.model.User;
-import com.example.chat.repository.UserRepository;
+import com.example.chat.model.RoomPage;
+import com.example.chat.search.SearchResult;
 import com.example.chat.service.ChatService;
+import com.example.chat.service.RoomActivityTracker;
+import com.example.chat.service.TokenService;
+import com.example.chat.service.UserDirectory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -26,11 +38,19 @@ public class ChatController {
     private ChatService chatService;
 
     @Autowired
-    private UserRepository userRepository;
+    private UserDirectory userDirectory;
+
+    @Autowired
+    private RoomActivityTracker roomActivity;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    // Kept for older clients; GET /api/users?ids=... resolves many users at once
     @GetMapping("/{userId}")
     public ResponseEntity<Map<String, String>> getUsernameById(@PathVariable Long userId) {
-        return userRepository.findById(userId)
-                .map(user -> ResponseEntity.ok(Map.of("username", user.getUsername())))
+        return Optional.ofNullable(userDirectory.find(userId))
+                .map(user -> ResponseEntity.ok(Map.of("username", user.username())))
                 .orElse(ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(Map.of("error", "User not found")));
     }
@@ -40,7 +60,7 @@ public class ChatController {
     public ResponseEntity<List<ChatRoom>> getAllRooms() {
         try {
             List<ChatRoom> rooms = chatService.getAllRooms();
-            logger.info("Fetched {} chat rooms", rooms.size());
+            logger.debug("Fetched {} chat rooms", rooms.size());
             return ResponseEntity.ok(rooms);
         } catch (CustomException e) {
             logger.warn("Error fetching rooms: {}", e.getMessage());
@@ -51,11 +71,34 @@ public class ChatController {
         }
     }
 
+    // Paged room list with each room's newest message and the caller's unread count; changes follow on /topic/rooms
+    @GetMapping("/summaries")
+    public ResponseEntity<RoomPage> getRoomSummaries(@RequestParam(required = false) Long after,
+                                                     @RequestParam(defaultValue = "50") int limit,
+                                                     Authentication authentication) {
+        try {
+            Long userId = authentication != null && authentication.getDetails() instanceof TokenService.Claims claims
+                    ? claims.userId() : null;
+            RoomPage page = roomActivity.page(userId, after, limit);
+            logger.debug("Fetched {} room summaries after {}", page.rooms().size(), after);
+            return ResponseEntity.ok(page);
+        } catch (CustomException e) {
+            logger.warn("Error fetching room summaries: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        } catch (Exception e) {
+            logger.error("Unexpected error fetching room summaries: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
     @GetMapping("/{roomId}/messages")
-    public ResponseEntity<List<Message>> getMessagesByRoomId(@PathVariable Long roomId) {
+    public ResponseEntity<List<Message>> getMessagesByRoomId(@PathVariable Long roomId,
+                                                             @RequestParam(required = false) Long before,
+                                                             @RequestParam(required = false) Long after,
+                                                             @RequestParam(defaultValue = "50") int limit) {
         try {
-            List<Message> messages = chatService.getMessagesByRoomId(roomId);
-            logger.info("Fetched {} messages for room {}", messages.size(), roomId);
+            List<Message> messages = chatService.getMessagesByRoomId(roomId, before, after, limit);
+            logger.debug("Fetched {} messages for room {}", messages.size(), roomId);
             return ResponseEntity.ok(messages);
         } catch (CustomException e) {
             logger.warn("Error fetching messages for room {}: {}", roomId, e.getMessage());
@@ -66,6 +109,45 @@ public class ChatController {
         }
     }
 
+    @GetMapping("/{roomId}/search")
+    public ResponseEntity<SearchResult> searchRoom(@PathVariable Long roomId,
+                                                   @RequestParam String q,
+                                                   @RequestParam(required = false) Long cursor,
+                                                   @RequestParam(defaultValue = "20") int limit) {
+        try {
+            SearchResult result = chatService.searchMessages(q, roomId, cursor, limit);
+            logger.debug("Search '{}' in room {} returned {} messages", q, roomId, result.messages().size());
+            return ResponseEntity.ok(result);
+        } catch (CustomException e) {
+            logger.warn("Error searching room {}: {}", roomId, e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        } catch (Exception e) {
+            logger.error("Unexpected error searching room {}: {}", roomId, e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+
+    // Full room export, written as a JSON array one message at a time
+    @GetMapping(value = "/{roomId}/messages/stream", produces = MediaType.APPLICATION_JSON_VALUE)
+    public void streamMessagesByRoomId(@PathVariable Long roomId, HttpServletResponse response) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        try (JsonGenerator generator = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            generator.writeStartArray();
+            chatService.streamMessagesByRoomId(roomId, message -> {
+                try {
+                    writer.writeValue(generator, message);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            generator.writeEndArray();
+        } catch (Exception e) {
+            // Headers are already committed at this point, so all we can do is cut the response short
+            logger.error("Error streaming messages for room {}: {}", roomId, e.getMessage(), e);
+        }
+    }
+
     // New endpoint for creating a chat room
     @PostMapping
     public ResponseEntity<ChatRoom> createRoom(@RequestBody ChatRoom room) {
@@ -0,0 +1,37 @@
+package com.example.chat.controller;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.ClusterEvent;
+import com.example.chat.cluster.HttpClusterBus;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.List;
+
+/** Receiving side of {@link HttpClusterBus}; answers 404 unless the node runs with {@code chat.cluster.mode=http}. */
+@RestController
+@RequestMapping("/internal/cluster")
+public class ClusterController {
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @PostMapping("/events")
+    public ResponseEntity<Void> receive(@RequestHeader(value = HttpClusterBus.SECRET_HEADER, required = false) String secret,
+                                        @RequestBody List<ClusterEvent> events) {
+        if (!(clusterBus instanceof HttpClusterBus httpBus)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).build();
+        }
+        if (!httpBus.acceptsSecret(secret)) {
+            return ResponseEntity.status(HttpStatus.FORBIDDEN).build();
+        }
+        httpBus.receive(events);
+        return ResponseEntity.accepted().build();
+    }
+}
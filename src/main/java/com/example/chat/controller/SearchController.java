@@ -0,0 +1,37 @@
+package com.example.chat.controller;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.search.SearchResult;
+import com.example.chat.service.ChatService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+@RestController
+@RequestMapping("/api/search")
+public class SearchController {
+    private static final Logger logger = LoggerFactory.getLogger(SearchController.class);
+
+    @Autowired
+    private ChatService chatService;
+
+    // Same as /api/rooms/{roomId}/search, across every room
+    @GetMapping
+    public ResponseEntity<SearchResult> search(@RequestParam String q,
+                                               @RequestParam(required = false) Long cursor,
+                                               @RequestParam(defaultValue = "20") int limit) {
+        try {
+            SearchResult result = chatService.searchMessages(q, null, cursor, limit);
+            logger.debug("Search '{}' returned {} messages", q, result.messages().size());
+            return ResponseEntity.ok(result);
+        } catch (CustomException e) {
+            logger.warn("Search error: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        } catch (Exception e) {
+            logger.error("Unexpected error during search: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+}
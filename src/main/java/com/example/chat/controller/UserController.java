@@ -0,0 +1,35 @@
+package com.example.chat.controller;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.UserSummary;
+import com.example.chat.service.UserDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+
+@RestController
+@RequestMapping("/api/users")
+public class UserController {
+    private static final Logger logger = LoggerFactory.getLogger(UserController.class);
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    // Batch name lookup: GET /api/users?ids=1,2,3 returns [{"id":1,"username":...}, ...] for the ids that exist
+    @GetMapping
+    public ResponseEntity<List<UserSummary>> getUsers(@RequestParam List<Long> ids) {
+        try {
+            return ResponseEntity.ok(userDirectory.lookup(ids));
+        } catch (CustomException e) {
+            logger.warn("Error looking up users: {}", e.getMessage());
+            return ResponseEntity.status(e.getStatusCode()).body(null);
+        } catch (Exception e) {
+            logger.error("Unexpected error looking up users: {}", e.getMessage(), e);
+            return ResponseEntity.status(500).body(null);
+        }
+    }
+}
@@ -0,0 +1,5 @@
+package com.example.chat.model;
+
+/** What login, registration and session checks return: the user's identity plus a session token. */
+public record AuthResponse(Long id, String username, String email, String token) {
+}
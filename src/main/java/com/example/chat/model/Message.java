@@ -1,11 +1,18 @@
 package com.example.chat.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonInclude;
 import jakarta.persistence.*;
 import java.time.LocalDateTime;
+import java.util.Map;
 
 @Entity
-@Table(name = "messages")
+@Table(name = "messages", indexes = {
+        @Index(name = "idx_messages_room_id", columnList = "room_id, id"),
+        @Index(name = "idx_messages_room_ts_id", columnList = "room_id, timestamp, id")
+}, uniqueConstraints = {
+        @UniqueConstraint(name = "uk_messages_room_seq", columnNames = {"room_id", "seq"})
+})
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class Message {
     @Id
@@ -24,6 +31,28 @@ public class Message {
     @Column(nullable = false)
     private LocalDateTime timestamp;
 
+    // Position within the room, 1, 2, 3...; null for messages saved before sequencing existed
+    @Column(name = "seq")
+    private Long seq;
+
+    // Set by edits and deletes; a deleted message keeps its row and seq but loses its text
+    @Column(name = "edited_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime editedAt;
+
+    @Column(name = "deleted_at")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private LocalDateTime deletedAt;
+
+    // Sender name filled in before a message goes out, so clients need no user lookup
+    @Transient
+    private String username;
+
+    // Reaction counts by emoji, merged in for history responses only
+    @Transient
+    @JsonInclude(JsonInclude.Include.NON_EMPTY)
+    private Map<String, Long> reactions;
+
     public Long getId() { return id; }
     public void setId(Long id) { this.id = id; }
     public Long getRoomId() { return roomId; }
@@ -34,4 +63,30 @@ public class Message {
     public void setMessageText(String messageText) { this.messageText = messageText; }
     public LocalDateTime getTimestamp() { return timestamp; }
     public void setTimestamp(LocalDateTime timestamp) { this.timestamp = timestamp; }
+    public Long getSeq() { return seq; }
+    public void setSeq(Long seq) { this.seq = seq; }
+    public LocalDateTime getEditedAt() { return editedAt; }
+    public void setEditedAt(LocalDateTime editedAt) { this.editedAt = editedAt; }
+    public LocalDateTime getDeletedAt() { return deletedAt; }
+    public void setDeletedAt(LocalDateTime deletedAt) { this.deletedAt = deletedAt; }
+    public String getUsername() { return username; }
+    public void setUsername(String username) { this.username = username; }
+    public Map<String, Long> getReactions() { return reactions; }
+    public void setReactions(Map<String, Long> reactions) { this.reactions = reactions; }
+
+    /** A detached copy that can be decorated for one response without touching a shared instance. */
+    public Message copy() {
+        Message copy = new Message();
+        copy.id = id;
+        copy.roomId = roomId;
+        copy.userId = userId;
+        copy.messageText = messageText;
+        copy.timestamp = timestamp;
+        copy.seq = seq;
+        copy.editedAt = editedAt;
+        copy.deletedAt = deletedAt;
+        copy.username = username;
+        copy.reactions = reactions;
+        return copy;
+    }
 }
@@ -0,0 +1,26 @@
+package com.example.chat.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * A change to a message that was already delivered, broadcast to its room instead of the whole message.
+ * Clients find the message by {@code id}; {@code seq} places it in the room without a lookup.
+ */
+public sealed interface MessageDelta {
+
+    record Edited(Long id, Long seq, String messageText, LocalDateTime editedAt) implements MessageDelta {
+        public static Edited of(Message message) {
+            return new Edited(message.getId(), message.getSeq(), message.getMessageText(), message.getEditedAt());
+        }
+    }
+
+    record Deleted(Long id, Long seq, LocalDateTime deletedAt) implements MessageDelta {
+        public static Deleted of(Message message) {
+            return new Deleted(message.getId(), message.getSeq(), message.getDeletedAt());
+        }
+    }
+
+    // The emoji's count after the change; 0 means the last such reaction was removed
+    record Reacted(Long id, Long seq, String emoji, long count) implements MessageDelta {
+    }
+}
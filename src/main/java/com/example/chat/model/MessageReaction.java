@@ -0,0 +1,32 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+
+/** One user's reaction with one emoji to one message. */
+@Entity
+@Table(name = "message_reactions", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_reactions_message_user_emoji", columnNames = {"message_id", "user_id", "emoji"})
+})
+public class MessageReaction {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "message_id", nullable = false)
+    private Long messageId;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(nullable = false, length = 32)
+    private String emoji;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getMessageId() { return messageId; }
+    public void setMessageId(Long messageId) { this.messageId = messageId; }
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public String getEmoji() { return emoji; }
+    public void setEmoji(String emoji) { this.emoji = emoji; }
+}
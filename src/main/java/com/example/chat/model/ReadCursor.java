@@ -0,0 +1,32 @@
+package com.example.chat.model;
+
+import jakarta.persistence.*;
+
+/** How far a user has read in a room, by room sequence number. */
+@Entity
+@Table(name = "room_read_cursors", uniqueConstraints = {
+        @UniqueConstraint(name = "uk_read_cursors_user_room", columnNames = {"user_id", "room_id"})
+})
+public class ReadCursor {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    @Column(name = "room_id", nullable = false)
+    private Long roomId;
+
+    @Column(name = "last_read_seq", nullable = false)
+    private Long lastReadSeq;
+
+    public Long getId() { return id; }
+    public void setId(Long id) { this.id = id; }
+    public Long getUserId() { return userId; }
+    public void setUserId(Long userId) { this.userId = userId; }
+    public Long getRoomId() { return roomId; }
+    public void setRoomId(Long roomId) { this.roomId = roomId; }
+    public Long getLastReadSeq() { return lastReadSeq; }
+    public void setLastReadSeq(Long lastReadSeq) { this.lastReadSeq = lastReadSeq; }
+}
@@ -0,0 +1,7 @@
+package com.example.chat.model;
+
+import java.util.List;
+
+/** One page of the room list in id order; pass {@code nextCursor} back as {@code after} for the next page. */
+public record RoomPage(List<RoomSummary> rooms, Long nextCursor) {
+}
@@ -0,0 +1,9 @@
+package com.example.chat.model;
+
+/**
+ * One entry of the room list: the room, its newest message (null for an empty room) and, for the asking
+ * user, the last sequence number they read and how many messages came after it. A user who never joined
+ * the room has no read position and no unread messages.
+ */
+public record RoomSummary(Long id, String name, long lastSeq, Message lastMessage, Long lastReadSeq, long unread) {
+}
@@ -4,16 +4,23 @@ import jakarta.persistence.*;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "users")
+@Table(name = "users", uniqueConstraints = {
+        @UniqueConstraint(name = User.USERNAME_KEY, columnNames = "username"),
+        @UniqueConstraint(name = User.EMAIL_KEY, columnNames = "email")
+})
 public class User {
+    // Registration relies on these keys to detect duplicates, so they are named to tell which one was hit
+    public static final String USERNAME_KEY = "uk_users_username";
+    public static final String EMAIL_KEY = "uk_users_email";
+
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String username;
 
-    @Column(unique = true, nullable = false)
+    @Column(nullable = false)
     private String email;
 
     @Column(nullable = false)
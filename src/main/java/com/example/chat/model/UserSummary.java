@@ -0,0 +1,5 @@
+package com.example.chat.model;
+
+/** Public view of a user: what clients need to show a sender, without the email or password hash. */
+public record UserSummary(Long id, String username) {
+}
@@ -1,7 +1,12 @@
 package com.example.chat.repository;
 
 import com.example.chat.model.ChatRoom;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 
+import java.util.List;
+
 public interface ChatRoomRepository extends JpaRepository<ChatRoom, Long> {
+    // Keyset pagination over the primary key
+    List<ChatRoom> findByIdGreaterThanOrderByIdAsc(Long id, Limit limit);
 }
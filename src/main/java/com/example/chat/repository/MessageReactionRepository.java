@@ -0,0 +1,12 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.MessageReaction;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.Collection;
+import java.util.List;
+
+public interface MessageReactionRepository extends JpaRepository<MessageReaction, Long> {
+    // All reactions of a page of messages in one query, served by uk_reactions_message_user_emoji
+    List<MessageReaction> findByMessageIdIn(Collection<Long> messageIds);
+}
@@ -1,10 +1,50 @@
 package com.example.chat.repository;
 
 import com.example.chat.model.Message;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
+import org.springframework.transaction.annotation.Transactional;
 
+import jakarta.persistence.QueryHint;
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface MessageRepository extends JpaRepository<Message, Long> {
-    List<Message> findByRoomIdOrderByTimestampAsc(Long roomId);
+    // Keyset pagination on (room_id, id); results of the "newest"/"before" queries come back newest first
+    List<Message> findByRoomIdOrderByIdDesc(Long roomId, Limit limit);
+    List<Message> findByRoomIdAndIdLessThanOrderByIdDesc(Long roomId, Long id, Limit limit);
+    List<Message> findByRoomIdAndIdGreaterThanOrderByIdAsc(Long roomId, Long id, Limit limit);
+
+    // Gap fill for reconnecting clients, served by uk_messages_room_seq
+    List<Message> findByRoomIdAndSeqGreaterThanOrderBySeqAsc(Long roomId, Long seq, Limit limit);
+
+    // Archival of messages past the hot retention window, served by idx_messages_room_ts_id
+    @Query("select distinct m.roomId from Message m where m.timestamp < :cutoff")
+    List<Long> findRoomIdsWithMessagesBefore(@Param("cutoff") LocalDateTime cutoff);
+    List<Message> findByRoomIdAndTimestampBeforeOrderByIdAsc(Long roomId, LocalDateTime cutoff, Limit limit);
+
+    // Edits and deletes rewrite the text in place; the row, its id and its seq stay
+    @Modifying
+    @Transactional
+    @Query("update Message m set m.messageText = :text, m.editedAt = :editedAt, m.deletedAt = :deletedAt where m.id = :id")
+    int updateContent(@Param("id") Long id, @Param("text") String text,
+                      @Param("editedAt") LocalDateTime editedAt, @Param("deletedAt") LocalDateTime deletedAt);
+
+    @Query("select coalesce(max(m.seq), 0) from Message m where m.roomId = :roomId")
+    long findMaxSeqByRoomId(@Param("roomId") Long roomId);
+
+    // Integer.MIN_VALUE makes Connector/J stream rows instead of buffering the whole result set
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("select m from Message m where m.roomId = :roomId order by m.timestamp asc, m.id asc")
+    Stream<Message> streamByRoomId(@Param("roomId") Long roomId);
+
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "-2147483648"))
+    @Query("select m from Message m order by m.id asc")
+    Stream<Message> streamAll();
 }
@@ -0,0 +1,11 @@
+package com.example.chat.repository;
+
+import com.example.chat.model.ReadCursor;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+public interface ReadCursorRepository extends JpaRepository<ReadCursor, Long> {
+    // Served by uk_read_cursors_user_room
+    List<ReadCursor> findByUserId(Long userId);
+}
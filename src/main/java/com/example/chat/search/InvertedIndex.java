@@ -0,0 +1,333 @@
+package com.example.chat.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Compact in-memory inverted index over chat messages. Every added message becomes a document ordinal
+ * (0, 1, 2...), so newer messages have higher ordinals; each term and each room keeps a postings list of
+ * ordinals as varint deltas in blocks of {@value #BLOCK} with the first ordinal of every block kept
+ * aside, which lets a query walk lists from newest to oldest and skip whole blocks.
+ * Results are ordered by message id and paged by it, so a cursor stays valid across rebuilds. Ordinals follow
+ * message ids except for the few documents added out of order (edits, saves that raced, a rebuild's archive
+ * and table streams), which are tracked separately. Adding a message again, or removing it, tombstones its
+ * earlier document, so every message matches at most once and with its current text.
+ * Not thread-safe: one writer, readers coordinated by the caller.
+ */
+public class InvertedIndex {
+    static final int BLOCK = 128;
+    private static final int MAX_TOKEN_LENGTH = 40;
+
+    private final Map<String, Postings> terms = new HashMap<>();
+    private final Map<Long, Postings> rooms = new HashMap<>();
+    private long[] messageIds = new long[1024];
+    private long[] roomIds = new long[1024];
+    // Highest message id among ordinals 0..doc; equals messageIds[doc] for documents added in order
+    private long[] maxIdUpTo = new long[1024];
+    private int docCount;
+    private long maxMessageId;
+    private final BitSet removed = new BitSet();
+    // Documents whose id is not above every earlier one: id -> ordinal, and their ordinals ascending
+    private final Map<Long, Integer> outOfOrder = new HashMap<>();
+    private int[] outOfOrderDocs = new int[16];
+    private int outOfOrderCount;
+
+    /** Indexes a message, replacing whatever was indexed for it before. */
+    public void add(long messageId, long roomId, String text) {
+        remove(messageId);
+        int doc = docCount++;
+        if (doc == messageIds.length) {
+            messageIds = Arrays.copyOf(messageIds, messageIds.length * 2);
+            roomIds = Arrays.copyOf(roomIds, roomIds.length * 2);
+            maxIdUpTo = Arrays.copyOf(maxIdUpTo, maxIdUpTo.length * 2);
+        }
+        if (doc > 0 && messageId <= maxMessageId) {
+            outOfOrder.put(messageId, doc);
+            if (outOfOrderCount == outOfOrderDocs.length) {
+                outOfOrderDocs = Arrays.copyOf(outOfOrderDocs, outOfOrderCount * 2);
+            }
+            outOfOrderDocs[outOfOrderCount++] = doc;
+        }
+        messageIds[doc] = messageId;
+        roomIds[doc] = roomId;
+        maxMessageId = Math.max(maxMessageId, messageId);
+        maxIdUpTo[doc] = maxMessageId;
+        for (String token : tokenize(text)) {
+            terms.computeIfAbsent(token, t -> new Postings()).add(doc);
+        }
+        rooms.computeIfAbsent(roomId, id -> new Postings()).add(doc);
+    }
+
+    /** Stops a message from matching, e.g. because it was deleted. */
+    public void remove(long messageId) {
+        Integer late = outOfOrder.remove(messageId);
+        int doc = late != null ? late : firstReaching(messageId);
+        if (doc < docCount && messageIds[doc] == messageId) {
+            removed.set(doc);
+        }
+    }
+
+    public int size() {
+        return docCount;
+    }
+
+    public int termCount() {
+        return terms.size();
+    }
+
+    public long maxMessageId() {
+        return maxMessageId;
+    }
+
+    /**
+     * Messages containing every token of {@code query} (in {@code roomId} when given), highest id first.
+     * {@code cursor} is the {@link Page#nextCursor()} of the previous page, or {@code null} for the first;
+     * the page holds only ids below it.
+     */
+    public Page search(String query, Long roomId, Long cursor, int limit) {
+        Set<String> tokens = tokenize(query);
+        if (tokens.isEmpty()) {
+            return new Page(List.of(), null);
+        }
+        List<Postings> lists = new ArrayList<>(tokens.size() + 1);
+        for (String token : tokens) {
+            lists.add(terms.get(token));
+        }
+        if (roomId != null) {
+            lists.add(rooms.get(roomId));
+        }
+        if (lists.contains(null)) {
+            return new Page(List.of(), null);
+        }
+        // The rarest list drives; the others only confirm its candidates
+        lists.sort(Comparator.comparingInt(postings -> postings.count));
+        long below = cursor != null ? cursor : Long.MAX_VALUE;
+        // In-order documents from here on all have ids at or above the cursor
+        int start = firstReaching(below);
+        // The best limit documents so far, lowest id on top
+        PriorityQueue<Integer> best = new PriorityQueue<>(limit + 1, Comparator.comparingLong(doc -> messageIds[doc]));
+
+        Postings.Cursor[] cursors = cursors(lists);
+        for (int i = outOfOrderCount - 1; i >= 0 && outOfOrderDocs[i] >= start; i--) {
+            int doc = outOfOrderDocs[i];
+            if (messageIds[doc] < below && !removed.get(doc) && matchesAll(cursors, doc)) {
+                offer(best, doc, limit);
+            }
+        }
+
+        cursors = cursors(lists);
+        int doc = cursors[0].advanceTo(start - 1);
+        while (doc >= 0) {
+            // Nothing at or below this ordinal has a higher id than the worst hit we would keep
+            if (best.size() == limit && maxIdUpTo[doc] < messageIds[best.peek()]) {
+                break;
+            }
+            int candidate = doc;
+            for (int i = 1; i < cursors.length; i++) {
+                int found = cursors[i].advanceTo(candidate);
+                if (found < candidate) {
+                    candidate = found;
+                    break;
+                }
+            }
+            if (candidate < 0) {
+                break;
+            }
+            if (candidate == doc) {
+                if (messageIds[doc] < below && !removed.get(doc)) {
+                    offer(best, doc, limit);
+                }
+                doc = cursors[0].advanceTo(doc - 1);
+            } else {
+                doc = cursors[0].advanceTo(candidate);
+            }
+        }
+
+        Hit[] hits = new Hit[best.size()];
+        for (int i = hits.length - 1; i >= 0; i--) {
+            int hit = best.poll();
+            hits[i] = new Hit(messageIds[hit], roomIds[hit]);
+        }
+        Long next = hits.length == limit && limit > 0 ? hits[hits.length - 1].messageId() : null;
+        return new Page(List.of(hits), next);
+    }
+
+    // First ordinal whose running maximum id reaches {@code messageId}; docCount when none does
+    private int firstReaching(long messageId) {
+        int low = 0;
+        int high = docCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (maxIdUpTo[mid] < messageId) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static Postings.Cursor[] cursors(List<Postings> lists) {
+        Postings.Cursor[] cursors = new Postings.Cursor[lists.size()];
+        for (int i = 0; i < cursors.length; i++) {
+            cursors[i] = lists.get(i).cursor();
+        }
+        return cursors;
+    }
+
+    // Targets must not increase between calls on the same cursors
+    private static boolean matchesAll(Postings.Cursor[] cursors, int doc) {
+        for (Postings.Cursor cursor : cursors) {
+            if (cursor.advanceTo(doc) != doc) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void offer(PriorityQueue<Integer> best, int doc, int limit) {
+        best.add(doc);
+        if (best.size() > limit) {
+            best.poll();
+        }
+    }
+
+    /** Lower-cased runs of letters and digits, each distinct token once. */
+    public static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        if (text == null) {
+            return tokens;
+        }
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                token.append(Character.toLowerCase(c));
+            } else if (!token.isEmpty()) {
+                if (token.length() <= MAX_TOKEN_LENGTH) {
+                    tokens.add(token.toString());
+                }
+                token.setLength(0);
+            }
+        }
+        return tokens;
+    }
+
+    public record Page(List<Hit> hits, Long nextCursor) {
+    }
+
+    public record Hit(long messageId, long roomId) {
+    }
+
+    /** Ascending ordinals; appends only. */
+    static final class Postings {
+        private byte[] data = new byte[8];
+        private int length;
+        private int[] blockFirst = new int[1];
+        private int[] blockOffset = new int[1];
+        private int count;
+        private int lastDoc = -1;
+
+        void add(int doc) {
+            if (doc <= lastDoc) {
+                return;
+            }
+            if (count % BLOCK == 0) {
+                int block = count / BLOCK;
+                if (block == blockFirst.length) {
+                    blockFirst = Arrays.copyOf(blockFirst, block * 2);
+                    blockOffset = Arrays.copyOf(blockOffset, block * 2);
+                }
+                blockFirst[block] = doc;
+                blockOffset[block] = length;
+            } else {
+                writeVarint(doc - lastDoc);
+            }
+            lastDoc = doc;
+            count++;
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > data.length) {
+                data = Arrays.copyOf(data, Math.max(data.length * 2, length + 5));
+            }
+            while ((value & ~0x7F) != 0) {
+                data[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            data[length++] = (byte) value;
+        }
+
+        Cursor cursor() {
+            return new Cursor();
+        }
+
+        /** Walks the list from newest to oldest; targets passed to {@link #advanceTo} must not increase. */
+        final class Cursor {
+            private final int[] decoded = new int[BLOCK];
+            private int block = -1;
+            private int position = -1;
+
+            /** Largest ordinal {@code <= target}, or -1 when there is none. */
+            int advanceTo(int target) {
+                if (block < 0 || decoded[0] > target) {
+                    int found = findBlock(target);
+                    if (found < 0) {
+                        return -1;
+                    }
+                    load(found);
+                }
+                while (decoded[position] > target) {
+                    position--;
+                }
+                return decoded[position];
+            }
+
+            // Last block whose first ordinal is <= target
+            private int findBlock(int target) {
+                int low = 0;
+                int high = (block < 0 ? (count + BLOCK - 1) / BLOCK : block) - 1;
+                int found = -1;
+                while (low <= high) {
+                    int mid = (low + high) >>> 1;
+                    if (blockFirst[mid] <= target) {
+                        found = mid;
+                        low = mid + 1;
+                    } else {
+                        high = mid - 1;
+                    }
+                }
+                return found;
+            }
+
+            private void load(int b) {
+                int size = Math.min(BLOCK, count - b * BLOCK);
+                int offset = blockOffset[b];
+                int doc = blockFirst[b];
+                decoded[0] = doc;
+                for (int i = 1; i < size; i++) {
+                    int value = 0;
+                    int shift = 0;
+                    byte current;
+                    do {
+                        current = data[offset++];
+                        value |= (current & 0x7F) << shift;
+                        shift += 7;
+                    } while (current < 0);
+                    doc += value;
+                    decoded[i] = doc;
+                }
+                block = b;
+                position = size - 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.chat.search;
+
+import com.example.chat.archive.MessageArchive;
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Stream;
+
+/**
+ * Keeps an {@link InvertedIndex} of all messages up to date. Saved messages are queued and applied in
+ * batches by a single "search-indexer" thread; queries share a read lock and only wait while a batch is
+ * applied. A rebuild streams the archive and the whole messages table into a fresh index and swaps it in,
+ * so searches keep working on the old one meanwhile, and keeps draining the queue as it goes so it does
+ * not overflow it itself. If the queue overflows anyway, the index is rebuilt rather than left with gaps,
+ * at most once per {@code rebuild-backoff-ms}; overflows in between share that one rebuild.
+ */
+@Component
+public class MessageSearchIndex {
+    private static final Logger logger = LoggerFactory.getLogger(MessageSearchIndex.class);
+    private static final int MAX_BATCH = 1000;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.search.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.search.queue-capacity:100000}")
+    private int queueCapacity;
+
+    @Value("${chat.search.rebuild-backoff-ms:60000}")
+    private long rebuildBackoffMs;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private InvertedIndex index = new InvertedIndex(); // guarded by lock
+    private BlockingQueue<Message> queue;
+    private volatile boolean rebuildRequested;
+    private volatile boolean running = true;
+    private Thread indexer;
+    private long lastRebuild; // indexer thread only
+    private TransactionTemplate readOnlyTransaction;
+    private Timer queries;
+    private Counter overflows;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        queue = new LinkedBlockingQueue<>(queueCapacity);
+        readOnlyTransaction = new TransactionTemplate(transactionManager);
+        readOnlyTransaction.setReadOnly(true);
+        queries = Timer.builder("chat.search.queries").register(meterRegistry);
+        overflows = Counter.builder("chat.search.queue.overflows").register(meterRegistry);
+        Gauge.builder("chat.search.index.docs", this, MessageSearchIndex::size).register(meterRegistry);
+        Gauge.builder("chat.search.queue.depth", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    // Built once the application is up so startup does not wait for the whole table
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        rebuildRequested = true;
+        lastRebuild = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(rebuildBackoffMs);
+        indexer = Thread.ofPlatform().daemon().name("search-indexer").start(this::run);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(Message message) {
+        if (!enabled) {
+            return;
+        }
+        if (!queue.offer(message)) {
+            overflows.increment();
+            if (!rebuildRequested) {
+                logger.warn("Search index queue is full, scheduling a rebuild");
+                rebuildRequested = true;
+            }
+        }
+    }
+
+    public void rebuild() {
+        rebuildRequested = true;
+    }
+
+    public InvertedIndex.Page search(String query, Long roomId, Long cursor, int limit) {
+        return queries.record(() -> {
+            lock.readLock().lock();
+            try {
+                return index.search(query, roomId, cursor, limit);
+            } finally {
+                lock.readLock().unlock();
+            }
+        });
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return index.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void run() {
+        List<Message> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                if (rebuildRequested && System.nanoTime() - lastRebuild >= TimeUnit.MILLISECONDS.toNanos(rebuildBackoffMs)) {
+                    rebuildRequested = false;
+                    rebuildNow();
+                    lastRebuild = System.nanoTime();
+                    continue;
+                }
+                Message first = queue.poll(500, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH - 1);
+                lock.writeLock().lock();
+                try {
+                    for (Message message : batch) {
+                        apply(index, message);
+                    }
+                } finally {
+                    lock.writeLock().unlock();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Error updating search index: {}", e.getMessage(), e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void rebuildNow() {
+        long started = System.nanoTime();
+        InvertedIndex fresh = new InvertedIndex();
+        List<Message> pending = new ArrayList<>();
+        messageArchive.forEachMessage(message -> {
+            apply(fresh, message);
+            if (fresh.size() % MAX_BATCH == 0) {
+                drainInto(pending);
+            }
+        });
+        readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<Message> messages = messageRepository.streamAll()) {
+                messages.forEach(message -> {
+                    apply(fresh, message);
+                    entityManager.detach(message);
+                    if (fresh.size() % MAX_BATCH == 0) {
+                        drainInto(pending);
+                    }
+                });
+            }
+        });
+        drainInto(pending);
+        // New saves queued while we streamed may already be in the fresh index. Edits and deletes are applied
+        // whatever their id: the stream may have read the message before the change, and applying replaces it.
+        long streamedUpTo = fresh.maxMessageId();
+        for (Message message : pending) {
+            if (message.getId() > streamedUpTo || message.getEditedAt() != null || message.getDeletedAt() != null) {
+                apply(fresh, message);
+            }
+        }
+        lock.writeLock().lock();
+        try {
+            index = fresh;
+        } finally {
+            lock.writeLock().unlock();
+        }
+        logger.info("Rebuilt search index: {} messages, {} terms in {} ms", fresh.size(), fresh.termCount(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    // A deleted message only takes its earlier entry out
+    private static void apply(InvertedIndex target, Message message) {
+        if (message.getDeletedAt() != null) {
+            target.remove(message.getId());
+        } else {
+            target.add(message.getId(), message.getRoomId(), message.getMessageText());
+        }
+    }
+
+    // Bounded like the queue; beyond that saves overflow and the backoff decides when to rebuild again
+    private void drainInto(List<Message> pending) {
+        if (pending.size() < queueCapacity) {
+            queue.drainTo(pending, queueCapacity - pending.size());
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (indexer != null) {
+            indexer.interrupt();
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.example.chat.search;
+
+import com.example.chat.model.Message;
+
+import java.util.List;
+
+/**
+ * One page of search hits, newest first; pass {@code nextCursor}, a message id, back as {@code cursor} for the
+ * next page.
+ */
+public record SearchResult(List<Message> messages, Long nextCursor) {
+}
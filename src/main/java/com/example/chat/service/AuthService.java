@@ -1,19 +1,45 @@
 package com.example.chat.service;
 
 import com.example.chat.exception.CustomException;
+import com.example.chat.model.AuthResponse;
 import com.example.chat.model.User;
 import com.example.chat.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.hibernate.exception.ConstraintViolationException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
+/**
+ * Registration and login. bcrypt runs on a small fixed pool with a bounded queue, so a burst of logins
+ * (e.g. every client reconnecting after a deploy) uses at most {@code bcrypt-threads} cores; requests that
+ * do not fit are answered with 503 right away. Once logged in, clients present the token from
+ * {@link TokenService} instead of their password.
+ */
 @Service
 public class AuthService {
     private static final Logger logger = LoggerFactory.getLogger(AuthService.class);
+    // Length of the username and email columns
+    private static final int MAX_FIELD_LENGTH = 255;
 
     @Autowired
     private UserRepository userRepository;
@@ -21,30 +47,112 @@ public class AuthService {
     @Autowired
     private PasswordEncoder passwordEncoder;
 
+    @Autowired
+    private TokenService tokenService;
+
+    @Autowired
+    private UsernameFilter usernameFilter;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.auth.bcrypt-threads:0}")
+    private int bcryptThreads;
+
+    @Value("${chat.auth.bcrypt-queue-capacity:64}")
+    private int bcryptQueueCapacity;
+
+    @Value("${chat.auth.bcrypt-timeout-ms:5000}")
+    private long bcryptTimeoutMs;
+
+    private ThreadPoolExecutor bcryptExecutor;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        int threads = bcryptThreads > 0 ? bcryptThreads : Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+        AtomicInteger count = new AtomicInteger();
+        bcryptExecutor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(bcryptQueueCapacity), runnable -> {
+                    Thread thread = new Thread(runnable, "bcrypt-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.AbortPolicy());
+        rejected = Counter.builder("chat.auth.bcrypt.rejected").register(meterRegistry);
+        meterRegistry.gauge("chat.auth.bcrypt.queue", bcryptExecutor, executor -> executor.getQueue().size());
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        bcryptExecutor.shutdownNow();
+    }
+
+    /**
+     * One INSERT; duplicates are detected by the unique keys on username and email rather than by lookups
+     * beforehand, which would cost two more round trips and still let concurrent registrations through.
+     */
     public User registerUser(String username, String email, String password) {
+        // Checked before the bcrypt, which is the expensive part
+        if (username == null || username.isBlank() || email == null || email.isBlank() || password == null || password.isEmpty()) {
+            throw new CustomException("Username, email and password are required", 400);
+        }
+        if (username.length() > MAX_FIELD_LENGTH || email.length() > MAX_FIELD_LENGTH) {
+            throw new CustomException("Username and email may have at most " + MAX_FIELD_LENGTH + " characters", 400);
+        }
         try {
-            if (userRepository.findByUsername(username).isPresent()) {
-                logger.warn("Registration failed: Username {} already exists", username);
-                throw new CustomException("Username already exists", 400);
-            }
-            if (userRepository.findByEmail(email).isPresent()) {
-                logger.warn("Registration failed: Email {} already exists", email);
-                throw new CustomException("Email already exists", 400);
-            }
             User user = new User();
             user.setUsername(username);
             user.setEmail(email);
-            user.setPassword(passwordEncoder.encode(password));
+            user.setPassword(bcrypt(() -> passwordEncoder.encode(password)));
             user.setCreatedAt(LocalDateTime.now());
-            User savedUser = userRepository.save(user);
+            User savedUser = userRepository.saveAndFlush(user);
+            usernameFilter.add(username);
             logger.info("User registered successfully: {}", username);
             return savedUser;
+        } catch (DataIntegrityViolationException e) {
+            String duplicate = duplicateField(e);
+            if (duplicate == null) {
+                // Schemas created before the keys were named still carry Hibernate's generated unique indexes,
+                // which may be hit first; only this failure path pays for the lookups
+                duplicate = userRepository.existsByUsername(username) ? "Username"
+                        : userRepository.existsByEmail(email) ? "Email" : null;
+            }
+            if (duplicate == null) {
+                logger.error("Error registering user {}: {}", username, e.getMessage(), e);
+                throw new CustomException("Failed to register user", 500);
+            }
+            logger.warn("Registration failed: {} already exists for {}", duplicate, username);
+            throw new CustomException(duplicate + " already exists", 400);
+        } catch (CustomException e) {
+            throw e;
         } catch (Exception e) {
             logger.error("Error registering user: {}", e.getMessage(), e);
             throw new CustomException("Failed to register user: " + e.getMessage(), 500);
         }
     }
 
+    /** Answers from the in-memory filter when it can; only possible hits cost a query. */
+    public boolean isUsernameAvailable(String username) {
+        return !usernameFilter.mightContain(username) || !userRepository.existsByUsername(username);
+    }
+
+    // Null unless one of the two named unique keys was hit, then the caller looks the values up. The name comes qualified by the database, e.g.
+    // "users.uk_users_username" on MySQL or with an index suffix on H2.
+    private static String duplicateField(DataIntegrityViolationException e) {
+        String constraint = e.getCause() instanceof ConstraintViolationException violation ? violation.getConstraintName() : null;
+        if (constraint == null) {
+            return null;
+        }
+        constraint = constraint.toLowerCase(Locale.ROOT);
+        if (constraint.contains(User.USERNAME_KEY)) {
+            return "Username";
+        }
+        if (constraint.contains(User.EMAIL_KEY)) {
+            return "Email";
+        }
+        return null;
+    }
+
     public User loginUser(String username, String password) {
         try {
             User user = userRepository.findByUsername(username)
@@ -52,7 +160,7 @@ public class AuthService {
                         logger.warn("Login failed: Username {} not found", username);
                         return new CustomException("Invalid username or password", 401);
                     });
-            if (!passwordEncoder.matches(password, user.getPassword())) {
+            if (!bcrypt(() -> passwordEncoder.matches(password, user.getPassword()))) {
                 logger.warn("Login failed: Invalid password for username {}", username);
                 throw new CustomException("Invalid username or password", 401);
             }
@@ -65,5 +173,47 @@ public class AuthService {
             throw new CustomException("Failed to login: " + e.getMessage(), 500);
         }
     }
-}
 
+    /** Checks a session token without touching the database; throws 401 if it is invalid or expired. */
+    public TokenService.Claims authenticate(String token) {
+        TokenService.Claims claims = tokenService.verify(token);
+        if (claims == null) {
+            throw new CustomException("Invalid or expired session", 401);
+        }
+        return claims;
+    }
+
+    public AuthResponse session(User user) {
+        return new AuthResponse(user.getId(), user.getUsername(), user.getEmail(),
+                tokenService.issue(user.getId(), user.getUsername()));
+    }
+
+    /** Exchanges a valid token for a fresh one, so active clients never have to send their password again. */
+    public AuthResponse resume(String token) {
+        TokenService.Claims claims = authenticate(token);
+        return new AuthResponse(claims.userId(), claims.username(), null,
+                tokenService.issue(claims.userId(), claims.username()));
+    }
+
+    private <T> T bcrypt(Supplier<T> work) {
+        Future<T> result;
+        try {
+            result = bcryptExecutor.submit(work::get);
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            logger.warn("Password check rejected: {} already queued", bcryptExecutor.getQueue().size());
+            throw new CustomException("Too many login attempts, try again shortly", 503);
+        }
+        try {
+            return result.get(bcryptTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            result.cancel(true);
+            throw new CustomException("Too many login attempts, try again shortly", 503);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("Login interrupted", 503);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+}
@@ -1,21 +1,51 @@
 package com.example.chat.service;
 
+import com.example.chat.archive.MessageArchive;
 import com.example.chat.exception.CustomException;
 import com.example.chat.model.ChatRoom;
 import com.example.chat.model.Message;
+import com.example.chat.model.MessageDelta;
 import com.example.chat.repository.ChatRoomRepository;
 import com.example.chat.repository.MessageRepository;
+import com.example.chat.search.InvertedIndex;
+import com.example.chat.search.MessageSearchIndex;
+import com.example.chat.search.SearchResult;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.annotation.CacheEvict;
+import org.springframework.cache.annotation.Cacheable;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 @Service
 public class ChatService {
     private static final Logger logger = LoggerFactory.getLogger(ChatService.class);
+    public static final int MAX_PAGE_SIZE = 200;
+    public static final int MAX_SEARCH_RESULTS = 100;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
     private ChatRoomRepository chatRoomRepository;
@@ -23,6 +53,44 @@ public class ChatService {
     @Autowired
     private MessageRepository messageRepository;
 
+    @Autowired
+    private MessageWriteBehindBuffer writeBehindBuffer;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private RoomSequencer roomSequencer;
+
+    @Autowired
+    private MessageSearchIndex messageSearchIndex;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    @Autowired
+    private RoomActivityTracker roomActivity;
+
+    @Autowired
+    private ReactionStore reactionStore;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // Sequence number plus insert (or hand-off to the write-behind queue), i.e. what a sender waits for
+    private Timer directSaves;
+    private Timer queuedSaves;
+
+    @PostConstruct
+    public void init() {
+        directSaves = Timer.builder("chat.message.save").tag("mode", "direct").register(meterRegistry);
+        queuedSaves = Timer.builder("chat.message.save").tag("mode", "write-behind").register(meterRegistry);
+    }
+
+    @Cacheable("rooms")
     public List<ChatRoom> getAllRooms() {
         try {
             return chatRoomRepository.findAll();
@@ -32,15 +100,144 @@ public class ChatService {
         }
     }
 
-    public List<Message> getMessagesByRoomId(Long roomId) {
+    /**
+     * Returns one page of a room's history in ascending order. Without a cursor this is the newest
+     * {@code limit} messages; {@code before} pages backwards and {@code after} forwards from a message id.
+     */
+    public List<Message> getMessagesByRoomId(Long roomId, Long before, Long after, int limit) {
+        if (before != null && after != null) {
+            throw new CustomException("Only one of 'before' and 'after' may be given", 400);
+        }
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new CustomException("Limit must be between 1 and " + MAX_PAGE_SIZE, 400);
+        }
         try {
-            return messageRepository.findByRoomIdOrderByTimestampAsc(roomId);
+            List<Message> cached = recentMessageCache.getPage(roomId, before, after, limit);
+            if (cached != null) {
+                return forClients(cached);
+            }
+            if (after != null) {
+                // Archived messages all have lower ids than the hot ones, so the archive comes first
+                List<Message> messages = new ArrayList<>();
+                if (after < messageArchive.maxArchivedId(roomId)) {
+                    messages.addAll(messageArchive.page(roomId, null, after, limit));
+                }
+                if (messages.size() < limit) {
+                    long from = messages.isEmpty() ? after : messages.get(messages.size() - 1).getId();
+                    messages.addAll(messageRepository.findByRoomIdAndIdGreaterThanOrderByIdAsc(
+                            roomId, from, Limit.of(limit - messages.size())));
+                }
+                return forClients(messages);
+            }
+            List<Message> newestFirst = before != null
+                    ? messageRepository.findByRoomIdAndIdLessThanOrderByIdDesc(roomId, before, Limit.of(limit))
+                    : messageRepository.findByRoomIdOrderByIdDesc(roomId, Limit.of(limit));
+            List<Message> messages = new ArrayList<>(newestFirst);
+            Collections.reverse(messages);
+            if (messages.size() < limit) {
+                // The hot table ran out; continue below its oldest message in the archive
+                Long olderThan = messages.isEmpty() ? before : messages.get(0).getId();
+                messages.addAll(0, messageArchive.page(roomId, olderThan, null, limit - messages.size()));
+            }
+            return forClients(messages);
         } catch (Exception e) {
             logger.error("Error fetching messages for room {}: {}", roomId, e.getMessage(), e);
             throw new CustomException("Failed to fetch messages for room " + roomId, 500);
         }
     }
 
+    /**
+     * Messages of a room numbered above {@code seq}, oldest first, for a client catching up after a
+     * reconnect. Returns {@code null} when more than {@code max} were missed and a full reload is cheaper,
+     * or when some of them were archived already; history pages read through the archive.
+     */
+    public List<Message> getMessagesSince(Long roomId, long seq, int max) {
+        try {
+            List<Message> missed = recentMessageCache.since(roomId, seq);
+            if (missed == null) {
+                missed = messageRepository.findByRoomIdAndSeqGreaterThanOrderBySeqAsc(roomId, seq, Limit.of(max + 1));
+                // Checked after the query: the archiver appends before it deletes, so a row moved meanwhile shows here
+                if (messageArchive.hasMessages(roomId) && seq < messageArchive.maxArchivedSeq(roomId)) {
+                    return null;
+                }
+            }
+            return missed.size() > max ? null : forClients(missed);
+        } catch (Exception e) {
+            logger.error("Error fetching messages after seq {} for room {}: {}", seq, roomId, e.getMessage(), e);
+            throw new CustomException("Failed to fetch missed messages for room " + roomId, 500);
+        }
+    }
+
+    /**
+     * Messages containing every word of {@code query}, newest first, in one room or, with a null
+     * {@code roomId}, in all rooms. A page is short only when there are no more matches.
+     */
+    public SearchResult searchMessages(String query, Long roomId, Long cursor, int limit) {
+        if (query == null || query.isBlank()) {
+            throw new CustomException("Search query cannot be empty", 400);
+        }
+        if (limit < 1 || limit > MAX_SEARCH_RESULTS) {
+            throw new CustomException("Limit must be between 1 and " + MAX_SEARCH_RESULTS, 400);
+        }
+        if (!messageSearchIndex.isEnabled()) {
+            throw new CustomException("Search is disabled", 503);
+        }
+        try {
+            Set<String> terms = InvertedIndex.tokenize(query);
+            List<Message> messages = new ArrayList<>(limit);
+            Long next = cursor;
+            do {
+                InvertedIndex.Page page = messageSearchIndex.search(query, roomId, next, limit - messages.size());
+                messages.addAll(load(page.hits(), terms));
+                next = page.nextCursor();
+            } while (messages.size() < limit && next != null);
+            return new SearchResult(forClients(messages), next);
+        } catch (Exception e) {
+            logger.error("Error searching messages for '{}' in room {}: {}", query, roomId, e.getMessage(), e);
+            throw new CustomException("Failed to search messages", 500);
+        }
+    }
+
+    // Hits in order, minus those the index is behind on: still waiting in the write-behind queue and not in
+    // the table yet, or changed since the indexer last saw them
+    private List<Message> load(List<InvertedIndex.Hit> hits, Set<String> terms) {
+        List<Long> ids = hits.stream().map(InvertedIndex.Hit::messageId).toList();
+        Map<Long, Message> byId = messageRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(Message::getId, Function.identity()));
+        // Whatever the hot table no longer has was archived
+        Map<Long, Set<Long>> archivedByRoom = new HashMap<>();
+        for (InvertedIndex.Hit hit : hits) {
+            if (!byId.containsKey(hit.messageId())) {
+                archivedByRoom.computeIfAbsent(hit.roomId(), id -> new HashSet<>()).add(hit.messageId());
+            }
+        }
+        archivedByRoom.forEach((room, archivedIds) ->
+                messageArchive.findByIds(room, archivedIds).forEach(message -> byId.put(message.getId(), message)));
+        return ids.stream()
+                .map(byId::get)
+                .filter(Objects::nonNull)
+                .filter(message -> message.getDeletedAt() == null)
+                .filter(message -> message.getEditedAt() == null
+                        || InvertedIndex.tokenize(message.getMessageText()).containsAll(terms))
+                .toList();
+    }
+
+    /**
+     * Feeds a room's full history to {@code consumer} in timestamp order without materializing it, archived
+     * messages first. Each message is detached once handed over so the persistence context does not grow
+     * with the room.
+     */
+    @Transactional(readOnly = true)
+    public void streamMessagesByRoomId(Long roomId, Consumer<Message> consumer) {
+        messageArchive.forEach(roomId, consumer);
+        try (Stream<Message> messages = messageRepository.streamByRoomId(roomId)) {
+            messages.forEach(message -> {
+                consumer.accept(message);
+                entityManager.detach(message);
+            });
+        }
+    }
+
     public Message saveMessage(Message message) {
         try {
             if (message.getRoomId() == null || message.getUserId() == null || message.getMessageText() == null) {
@@ -49,8 +246,17 @@ public class ChatService {
                 throw new CustomException("Invalid message data", 400);
             }
             message.setTimestamp(LocalDateTime.now());
-            Message savedMessage = messageRepository.save(message);
-            logger.info("Message saved for room {} by user {}", message.getRoomId(), message.getUserId());
+            boolean writeBehind = writeBehindBuffer.isEnabled();
+            Timer.Sample sample = Timer.start(meterRegistry);
+            message.setSeq(roomSequencer.next(message.getRoomId()));
+            Message savedMessage = writeBehind
+                    ? writeBehindBuffer.enqueue(message)
+                    : messageRepository.save(message);
+            sample.stop(writeBehind ? queuedSaves : directSaves);
+            recentMessageCache.add(savedMessage);
+            messageSearchIndex.add(savedMessage);
+            roomActivity.messageSaved(savedMessage);
+            logger.debug("Message saved for room {} by user {}", message.getRoomId(), message.getUserId());
             return savedMessage;
         } catch (CustomException e) {
             throw e;
@@ -60,6 +266,99 @@ public class ChatService {
         }
     }
 
+    /** Replaces the text of a message; only its sender may. Returns the changed message. */
+    public Message editMessage(Long roomId, Long messageId, Long userId, String text) {
+        if (text == null || text.isBlank()) {
+            throw new CustomException("Message text cannot be empty", 400);
+        }
+        Message message = change(roomId, messageId, userId, edited -> {
+            edited.setMessageText(text);
+            edited.setEditedAt(LocalDateTime.now());
+        });
+        messageSearchIndex.add(message);
+        return message;
+    }
+
+    /**
+     * Deletes a message for everyone; only its sender may. The row stays, without its text, so the room's
+     * sequence numbers keep no gaps and clients that hold the message can drop it by id.
+     */
+    public Message deleteMessage(Long roomId, Long messageId, Long userId) {
+        Message message = change(roomId, messageId, userId, deleted -> {
+            deleted.setMessageText("");
+            deleted.setDeletedAt(LocalDateTime.now());
+        });
+        messageSearchIndex.add(message);
+        return message;
+    }
+
+    /** Adds or removes a user's reaction; returns the new count, or {@code null} if nothing changed. */
+    public MessageDelta.Reacted react(Long roomId, Long messageId, Long userId, String emoji, boolean add) {
+        Message message = findForChange(roomId, messageId);
+        long count = reactionStore.react(messageId, userId, emoji, add);
+        return count == ReactionStore.UNCHANGED ? null : new MessageDelta.Reacted(messageId, message.getSeq(), emoji, count);
+    }
+
+    // Callers run on the room's serial executor, so the checks and the change cannot interleave
+    private Message change(Long roomId, Long messageId, Long userId, Consumer<Message> change) {
+        Message message = findForChange(roomId, messageId);
+        if (!message.getUserId().equals(userId)) {
+            throw new CustomException("Only the sender can change a message", 403);
+        }
+        try {
+            Message changed = writeBehindBuffer.whileNotFlushing(() -> {
+                // The cached instance is the one history and write-behind see; otherwise the loaded copy
+                Message updated = recentMessageCache.update(roomId, messageId, change);
+                if (updated == null) {
+                    change.accept(message);
+                    updated = message;
+                }
+                messageRepository.updateContent(messageId, updated.getMessageText(), updated.getEditedAt(), updated.getDeletedAt());
+                return updated;
+            });
+            roomActivity.record(changed);
+            logger.debug("Message {} in room {} changed by user {}", messageId, roomId, userId);
+            return changed;
+        } catch (Exception e) {
+            logger.error("Error changing message {} in room {}: {}", messageId, roomId, e.getMessage(), e);
+            throw new CustomException("Failed to change message", 500);
+        }
+    }
+
+    private Message findForChange(Long roomId, Long messageId) {
+        if (messageId == null) {
+            throw new CustomException("Message id is required", 400);
+        }
+        Message message;
+        try {
+            message = recentMessageCache.find(roomId, messageId);
+            // A quiet room's cache can outlive the rows it holds once they are archived
+            if (message != null && messageId <= messageArchive.maxArchivedId(roomId) && !messageRepository.existsById(messageId)) {
+                message = null;
+            }
+            if (message == null) {
+                message = messageRepository.findById(messageId)
+                        .filter(found -> found.getRoomId().equals(roomId))
+                        .orElse(null);
+            }
+        } catch (Exception e) {
+            logger.error("Error fetching message {} in room {}: {}", messageId, roomId, e.getMessage(), e);
+            throw new CustomException("Failed to fetch message", 500);
+        }
+        if (message == null) {
+            // Archive segments are immutable
+            if (messageId <= messageArchive.maxArchivedId(roomId)) {
+                throw new CustomException("Archived messages cannot be changed", 400);
+            }
+            throw new CustomException("Message not found", 404);
+        }
+        if (message.getDeletedAt() != null) {
+            throw new CustomException("Message was deleted", 400);
+        }
+        return message;
+    }
+
+    @Cacheable("roomNames")
     public String getRoomNameById(Long roomId) {
         try {
             return chatRoomRepository.findById(roomId)
@@ -73,7 +372,8 @@ public class ChatService {
         }
     }
 
-    // New method for creating a chat room
+    // New method for creating a chat room; a rename or delete must also evict "roomNames" for the room
+    @CacheEvict(cacheNames = "rooms", allEntries = true)
     public ChatRoom createRoom(String name) {
         try {
             if (name == null || name.trim().isEmpty()) {
@@ -83,6 +383,7 @@ public class ChatService {
             ChatRoom room = new ChatRoom();
             room.setName(name.trim());
             ChatRoom savedRoom = chatRoomRepository.save(room);
+            roomActivity.roomCreated(savedRoom);
             logger.info("Chat room created: {}", name);
             return savedRoom;
         } catch (CustomException e) {
@@ -92,4 +393,12 @@ public class ChatService {
             throw new CustomException("Failed to create chat room", 500);
         }
     }
+
+    // Sender names and reaction counts ride along with every message handed to clients. The cache hands out
+    // copies and everything else is loaded per request, so nothing shared is written here.
+    private List<Message> forClients(List<Message> messages) {
+        userDirectory.resolveUsernames(messages);
+        reactionStore.attach(messages);
+        return messages;
+    }
 }
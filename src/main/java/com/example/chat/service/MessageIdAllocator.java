@@ -0,0 +1,82 @@
+package com.example.chat.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Hands out message ids ahead of the insert so write-behind messages can be broadcast with their final id.
+ * Ids are reserved from the database in blocks, so several nodes can allocate without colliding as long as
+ * all of them run in write-behind mode. Guarded by a {@link ReentrantLock} rather than a monitor, since a
+ * virtual thread blocked in JDBC inside {@code synchronized} would pin its carrier thread.
+ */
+@Component
+public class MessageIdAllocator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageIdAllocator.class);
+    private static final String SEQUENCE_NAME = "messages";
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Value("${chat.messages.write-behind.id-block-size:1000}")
+    private int blockSize;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private long next;
+    private long limit;
+    private boolean tableReady;
+
+    public long nextId() {
+        lock.lock();
+        try {
+            if (next >= limit) {
+                try {
+                    reserveBlock();
+                } catch (DuplicateKeyException e) {
+                    // Another node created the sequence row between our SELECT and INSERT; it is visible now
+                    reserveBlock();
+                }
+            }
+            return next++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void reserveBlock() {
+        if (!tableReady) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS message_id_blocks ("
+                    + "name VARCHAR(64) NOT NULL PRIMARY KEY, next_val BIGINT NOT NULL)");
+            tableReady = true;
+        }
+        Long start = transactionTemplate.execute(status -> {
+            Long current = jdbcTemplate.query(
+                    "SELECT next_val FROM message_id_blocks WHERE name = ? FOR UPDATE",
+                    rs -> rs.next() ? rs.getLong(1) : null, SEQUENCE_NAME);
+            // Rows inserted through the IDENTITY path (e.g. before write-behind was switched on) must not be reused
+            Long maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM messages", Long.class);
+            long blockStart = Math.max(current == null ? 1 : current, maxId + 1);
+            if (current == null) {
+                jdbcTemplate.update("INSERT INTO message_id_blocks (name, next_val) VALUES (?, ?)",
+                        SEQUENCE_NAME, blockStart + blockSize);
+            } else {
+                jdbcTemplate.update("UPDATE message_id_blocks SET next_val = ? WHERE name = ?",
+                        blockStart + blockSize, SEQUENCE_NAME);
+            }
+            return blockStart;
+        });
+        next = start;
+        limit = start + blockSize;
+        logger.debug("Reserved message id block [{}, {})", next, limit);
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.chat.service;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.Message;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Optional write-behind path for chat messages. Messages get their id and timestamp on enqueue, are
+ * broadcast by the caller straight away and are inserted later in multi-row JDBC batches, either when
+ * {@code batch-size} messages have piled up or {@code flush-interval-ms} after the first one arrived.
+ * Edits and deletes run between flushes, see {@link #whileNotFlushing}.
+ */
+@Component
+public class MessageWriteBehindBuffer {
+    private static final Logger logger = LoggerFactory.getLogger(MessageWriteBehindBuffer.class);
+    private static final String INSERT_SQL =
+            "INSERT INTO messages (id, room_id, user_id, message_text, timestamp, seq, edited_at, deleted_at) "
+                    + "VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final int MAX_FLUSH_ATTEMPTS = 3;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MessageIdAllocator idAllocator;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.messages.write-behind.enabled:false}")
+    private boolean enabled;
+
+    @Value("${chat.messages.write-behind.queue-capacity:10000}")
+    private int queueCapacity;
+
+    @Value("${chat.messages.write-behind.batch-size:500}")
+    private int batchSize;
+
+    @Value("${chat.messages.write-behind.flush-interval-ms:50}")
+    private long flushIntervalMs;
+
+    @Value("${chat.messages.write-behind.offer-timeout-ms:100}")
+    private long offerTimeoutMs;
+
+    private BlockingQueue<Message> queue;
+    private Thread flusher;
+    private volatile boolean running;
+    // Held while a batch is read and committed
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    private Timer flushTimer;
+    private DistributionSummary batchSizes;
+    private Counter rejected;
+    private Counter failed;
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        flushTimer = Timer.builder("chat.messages.writebehind.flush")
+                .description("Time to insert and commit one write-behind batch")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("chat.messages.writebehind.batch.size")
+                .register(meterRegistry);
+        rejected = Counter.builder("chat.messages.writebehind.rejected")
+                .description("Messages refused because the write-behind queue was full")
+                .register(meterRegistry);
+        failed = Counter.builder("chat.messages.writebehind.failed")
+                .description("Messages that could not be persisted after all retries")
+                .register(meterRegistry);
+        Gauge.builder("chat.messages.writebehind.queue.depth", queue, BlockingQueue::size)
+                .register(meterRegistry);
+
+        running = true;
+        flusher = new Thread(this::flushLoop, "message-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+        logger.info("Write-behind message persistence enabled (capacity={}, batchSize={}, flushInterval={}ms)",
+                queueCapacity, batchSize, flushIntervalMs);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Assigns the message its id and queues it for insertion. Blocks for at most {@code offer-timeout-ms}
+     * when the queue is full and then rejects the message with a 503 so senders slow down.
+     */
+    public Message enqueue(Message message) {
+        message.setId(idAllocator.nextId());
+        try {
+            if (!queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                rejected.increment();
+                logger.warn("Write-behind queue full, rejecting message for room {}", message.getRoomId());
+                throw new CustomException("Server busy, message not accepted", 503);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CustomException("Server busy, message not accepted", 503);
+        }
+        return message;
+    }
+
+    /**
+     * Runs a change to a message that may still be queued while no batch is being written. The change then
+     * either lands in the instance before its batch reads it, or finds the row committed and updates it;
+     * without this an UPDATE could run between a batch reading the old text and its INSERT committing.
+     */
+    public <T> T whileNotFlushing(Supplier<T> change) {
+        if (!enabled) {
+            return change.get();
+        }
+        flushLock.lock();
+        try {
+            return change.get();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        List<Message> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                Message first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    Message next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                flush(batch);
+            } catch (InterruptedException e) {
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                }
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Message> batch) {
+        for (int attempt = 1; attempt <= MAX_FLUSH_ATTEMPTS; attempt++) {
+            try {
+                flushLock.lock();
+                try {
+                    flushTimer.record(() -> transactionTemplate.executeWithoutResult(status -> insert(batch)));
+                } finally {
+                    flushLock.unlock();
+                }
+                batchSizes.record(batch.size());
+                logger.debug("Flushed {} write-behind messages", batch.size());
+                return;
+            } catch (Exception e) {
+                logger.warn("Write-behind flush of {} messages failed (attempt {}/{}): {}",
+                        batch.size(), attempt, MAX_FLUSH_ATTEMPTS, e.getMessage());
+                try {
+                    Thread.sleep(100L * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+        failed.increment(batch.size());
+        logger.error("Dropping {} write-behind messages after {} failed attempts (ids {}..{})", batch.size(),
+                MAX_FLUSH_ATTEMPTS, batch.get(0).getId(), batch.get(batch.size() - 1).getId());
+    }
+
+    private void insert(List<Message> batch) {
+        jdbcTemplate.batchUpdate(INSERT_SQL, batch, batch.size(), (ps, message) -> {
+            ps.setLong(1, message.getId());
+            ps.setLong(2, message.getRoomId());
+            ps.setLong(3, message.getUserId());
+            ps.setString(4, message.getMessageText());
+            ps.setTimestamp(5, Timestamp.valueOf(message.getTimestamp()));
+            ps.setLong(6, message.getSeq());
+            // Edited or deleted while still queued: the queued instance already carries the change
+            ps.setTimestamp(7, message.getEditedAt() != null ? Timestamp.valueOf(message.getEditedAt()) : null);
+            ps.setTimestamp(8, message.getDeletedAt() != null ? Timestamp.valueOf(message.getDeletedAt()) : null);
+        });
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        if (flusher == null) {
+            return;
+        }
+        // The flusher polls with a short timeout, so it notices this and drains what is left on its own
+        running = false;
+        flusher.join(TimeUnit.SECONDS.toMillis(10));
+        if (!queue.isEmpty()) {
+            logger.error("Shutting down with {} unflushed write-behind messages", queue.size());
+        }
+    }
+}
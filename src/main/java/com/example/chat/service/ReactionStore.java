@@ -0,0 +1,217 @@
+package com.example.chat.service;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.Message;
+import com.example.chat.model.MessageReaction;
+import com.example.chat.repository.MessageReactionRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Message reactions kept in memory: which users reacted to a message with which emoji. A click changes
+ * memory and is answered with the new count straight away; the table is brought up to date once per
+ * flush interval with one batch of inserts and one of deletes, and a reaction toggled on and off within
+ * an interval costs no write at all. History pages load the reactions of all their messages in one query.
+ * Changes stay pending until their batch has committed, so a message reloaded meanwhile still sees them.
+ * In a cluster each node caches what it has seen, so counts on another node may lag until the message
+ * goes unread there for {@code cache-ttl-minutes}; the rows themselves are always right because every
+ * write is idempotent.
+ */
+@Component
+public class ReactionStore {
+    private static final Logger logger = LoggerFactory.getLogger(ReactionStore.class);
+    private static final int MAX_EMOJI_LENGTH = 32;
+    /** Returned by {@link #react} when the reaction was already in the requested state. */
+    public static final long UNCHANGED = -1;
+
+    @Autowired
+    private MessageReactionRepository reactionRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.reactions.cache-size:100000}")
+    private long cacheSize;
+
+    @Value("${chat.reactions.cache-ttl-minutes:10}")
+    private long cacheTtlMinutes;
+
+    @Value("${chat.reactions.max-emojis-per-message:20}")
+    private int maxEmojisPerMessage;
+
+    private Cache<Long, Reactions> reactions;
+    // Desired state of reactions not yet committed: true = present, false = removed
+    private final Map<Key, Boolean> pending = new ConcurrentHashMap<>();
+    private DistributionSummary flushedRows;
+
+    @PostConstruct
+    public void init() {
+        reactions = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterAccess(Duration.ofMinutes(cacheTtlMinutes))
+                .build();
+        flushedRows = DistributionSummary.builder("chat.reactions.flush").register(meterRegistry);
+        Gauge.builder("chat.reactions.pending", pending, Map::size).register(meterRegistry);
+    }
+
+    /** Adds or removes a user's reaction; returns the emoji's new count, or {@link #UNCHANGED}. */
+    public long react(Long messageId, Long userId, String emoji, boolean add) {
+        if (emoji == null || emoji.isBlank() || emoji.length() > MAX_EMOJI_LENGTH) {
+            throw new CustomException("Invalid reaction", 400);
+        }
+        Reactions message = reactions.get(messageId, id -> load(Set.of(id)).get(id));
+        long count;
+        synchronized (message) {
+            Set<Long> users = message.byEmoji.get(emoji);
+            if (add && users == null && message.byEmoji.size() >= maxEmojisPerMessage) {
+                throw new CustomException("Too many different reactions on this message", 400);
+            }
+            boolean changed = add
+                    ? message.byEmoji.computeIfAbsent(emoji, e -> new HashSet<>()).add(userId)
+                    : users != null && users.remove(userId);
+            if (!changed) {
+                return UNCHANGED;
+            }
+            count = message.count(emoji);
+            if (count == 0) {
+                message.byEmoji.remove(emoji);
+            }
+            pending.put(new Key(messageId, userId, emoji), add);
+        }
+        return count;
+    }
+
+    /** Sets each message's reaction counts, loading whatever is not cached in a single query. */
+    public void attach(Collection<Message> messages) {
+        if (messages.isEmpty()) {
+            return;
+        }
+        Set<Long> ids = new HashSet<>();
+        for (Message message : messages) {
+            ids.add(message.getId());
+        }
+        Map<Long, Reactions> found = reactions.getAll(ids, this::load);
+        for (Message message : messages) {
+            Reactions entry = found.get(message.getId());
+            message.setReactions(entry != null ? entry.counts() : null);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.reactions.flush-interval-ms:1000}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        Map<Key, Boolean> taken = new HashMap<>(pending);
+        taken.forEach((key, present) ->
+                (present ? inserts : deletes).add(new Object[]{key.messageId(), key.userId(), key.emoji()}));
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                if (!inserts.isEmpty()) {
+                    jdbcTemplate.batchUpdate("INSERT IGNORE INTO message_reactions (message_id, user_id, emoji) VALUES (?, ?, ?)", inserts);
+                }
+                if (!deletes.isEmpty()) {
+                    jdbcTemplate.batchUpdate("DELETE FROM message_reactions WHERE message_id = ? AND user_id = ? AND emoji = ?", deletes);
+                }
+            });
+            // Only now, and only where nobody changed it since the snapshot; a newer state goes next time
+            taken.forEach(pending::remove);
+            flushedRows.record(taken.size());
+            logger.debug("Saved {} reaction changes", taken.size());
+        } catch (Exception e) {
+            logger.error("Error saving {} reaction changes: {}", taken.size(), e.getMessage(), e);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flush();
+    }
+
+    // Unsaved changes are laid over the rows, so an entry evicted before its flush reloads correctly. They are
+    // read before the rows: a change committed in between is then in both, never in neither.
+    private Map<Long, Reactions> load(Set<? extends Long> messageIds) {
+        Map<Long, Reactions> loaded = new HashMap<>();
+        for (Long id : messageIds) {
+            loaded.put(id, new Reactions());
+        }
+        Map<Key, Boolean> unsaved = new HashMap<>();
+        pending.forEach((key, present) -> {
+            if (loaded.containsKey(key.messageId())) {
+                unsaved.put(key, present);
+            }
+        });
+        for (MessageReaction row : reactionRepository.findByMessageIdIn(Set.copyOf(messageIds))) {
+            loaded.get(row.getMessageId()).byEmoji.computeIfAbsent(row.getEmoji(), e -> new HashSet<>()).add(row.getUserId());
+        }
+        unsaved.forEach((key, present) -> {
+            Reactions entry = loaded.get(key.messageId());
+            if (entry != null) {
+                Set<Long> users = entry.byEmoji.computeIfAbsent(key.emoji(), e -> new HashSet<>());
+                if (present) {
+                    users.add(key.userId());
+                } else {
+                    users.remove(key.userId());
+                }
+                if (users.isEmpty()) {
+                    entry.byEmoji.remove(key.emoji());
+                }
+            }
+        });
+        return loaded;
+    }
+
+    /** Who reacted with what to one message; guarded by its own monitor. */
+    private static final class Reactions {
+        private final Map<String, Set<Long>> byEmoji = new LinkedHashMap<>();
+
+        long count(String emoji) {
+            Set<Long> users = byEmoji.get(emoji);
+            return users != null ? users.size() : 0;
+        }
+
+        synchronized Map<String, Long> counts() {
+            if (byEmoji.isEmpty()) {
+                return null;
+            }
+            Map<String, Long> counts = new LinkedHashMap<>();
+            byEmoji.forEach((emoji, users) -> counts.put(emoji, (long) users.size()));
+            return counts;
+        }
+    }
+
+    private record Key(Long messageId, Long userId, String emoji) {
+    }
+}
@@ -0,0 +1,359 @@
+package com.example.chat.service;
+
+import com.example.chat.archive.MessageArchive;
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Keeps the newest messages of each room in a fixed-size ring buffer so room joins can be served
+ * without a database scan. Each buffer has its own lock; whole rooms are evicted least-recently-used
+ * first once the estimated footprint exceeds {@code max-bytes}. Readers get copies taken under the lock,
+ * since the cached instances are changed in place by edits and may still be queued for write-behind.
+ */
+@Component
+public class RecentMessageCache {
+    private static final Logger logger = LoggerFactory.getLogger(RecentMessageCache.class);
+    private static final long EVICTED = Long.MIN_VALUE;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.cache.recent-messages.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.cache.recent-messages.per-room:200}")
+    private int capacity;
+
+    @Value("${chat.cache.recent-messages.max-bytes:67108864}")
+    private long maxBytes;
+
+    private final Map<Long, RoomBuffer> rooms = new ConcurrentHashMap<>();
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicBoolean evicting = new AtomicBoolean();
+
+    private Counter hits;
+    private Counter misses;
+
+    @PostConstruct
+    public void init() {
+        hits = Counter.builder("chat.cache.recent.requests").tag("result", "hit").register(meterRegistry);
+        misses = Counter.builder("chat.cache.recent.requests").tag("result", "miss").register(meterRegistry);
+        Gauge.builder("chat.cache.recent.bytes", totalBytes, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("chat.cache.recent.rooms", rooms, Map::size).register(meterRegistry);
+    }
+
+    public void add(Message message) {
+        if (!enabled) {
+            return;
+        }
+        long delta;
+        do {
+            delta = rooms.computeIfAbsent(message.getRoomId(), id -> new RoomBuffer(capacity)).add(message);
+        } while (delta == EVICTED);
+        totalBytes.addAndGet(delta);
+        evictIfOverBudget();
+    }
+
+    /**
+     * Answers a history page from memory, warming the room from the database on first access.
+     * Returns {@code null} when the buffer cannot prove it holds every message the page needs.
+     */
+    public List<Message> getPage(Long roomId, Long before, Long after, int limit) {
+        if (!enabled || limit > capacity) {
+            return null;
+        }
+        List<Message> page = warmBuffer(roomId).page(before, after, limit);
+        (page != null ? hits : misses).increment();
+        return page;
+    }
+
+    /**
+     * Messages with a sequence number above {@code seq}, in sequence order. Returns {@code null} unless the
+     * buffer reaches back to {@code seq}, i.e. it provably holds everything the caller missed.
+     */
+    public List<Message> since(Long roomId, long seq) {
+        if (!enabled) {
+            return null;
+        }
+        List<Message> missed = warmBuffer(roomId).since(seq);
+        (missed != null ? hits : misses).increment();
+        return missed;
+    }
+
+    /** A copy of the cached message, or {@code null} when the room's buffer does not hold it. */
+    public Message find(Long roomId, Long messageId) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return buffer != null ? buffer.find(messageId) : null;
+    }
+
+    /**
+     * Applies {@code change} to the cached instance of a message under the buffer's lock and returns a copy
+     * of the result, or {@code null} when the message is not cached. With write-behind on, the cached
+     * instance is also the one waiting in the insert queue, so a change to a message that is not in the
+     * table yet is not lost.
+     */
+    public Message update(Long roomId, Long messageId, Consumer<Message> change) {
+        RoomBuffer buffer = rooms.get(roomId);
+        return buffer != null ? buffer.update(messageId, change, totalBytes) : null;
+    }
+
+    private RoomBuffer warmBuffer(Long roomId) {
+        RoomBuffer buffer = rooms.computeIfAbsent(roomId, id -> new RoomBuffer(capacity));
+        if (!buffer.isWarm()) {
+            List<Message> newestFirst = messageRepository.findByRoomIdOrderByIdDesc(roomId, Limit.of(capacity));
+            // Fewer rows than asked for means nothing older exists, unless the rest was archived
+            boolean complete = newestFirst.size() < capacity && !messageArchive.hasMessages(roomId);
+            long delta = buffer.warm(newestFirst, complete);
+            if (delta != EVICTED) {
+                totalBytes.addAndGet(delta);
+                evictIfOverBudget();
+            }
+            logger.debug("Warmed recent-message cache for room {} with {} messages", roomId, newestFirst.size());
+        }
+        return buffer;
+    }
+
+    private void evictIfOverBudget() {
+        if (totalBytes.get() <= maxBytes || !evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            while (totalBytes.get() > maxBytes && !rooms.isEmpty()) {
+                Map.Entry<Long, RoomBuffer> coldest = null;
+                for (Map.Entry<Long, RoomBuffer> entry : rooms.entrySet()) {
+                    if (coldest == null || entry.getValue().lastAccess < coldest.getValue().lastAccess) {
+                        coldest = entry;
+                    }
+                }
+                if (coldest != null && rooms.remove(coldest.getKey(), coldest.getValue())) {
+                    totalBytes.addAndGet(-coldest.getValue().evict());
+                    logger.debug("Evicted room {} from recent-message cache", coldest.getKey());
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    private static long estimateBytes(Message message) {
+        return 96 + 2L * message.getMessageText().length();
+    }
+
+    /** Messages of one room, oldest first, in a circular array. Guarded by its own monitor. */
+    private static final class RoomBuffer {
+        private final Message[] slots;
+        private int head;
+        private int size;
+        private long bytes;
+        private boolean warm;
+        // True when no message older than the oldest buffered one exists
+        private boolean complete;
+        private boolean evicted;
+        volatile long lastAccess = System.nanoTime();
+
+        RoomBuffer(int capacity) {
+            this.slots = new Message[capacity];
+        }
+
+        synchronized boolean isWarm() {
+            return warm;
+        }
+
+        synchronized long add(Message message) {
+            if (evicted) {
+                return EVICTED;
+            }
+            lastAccess = System.nanoTime();
+            return insert(message, true);
+        }
+
+        synchronized long warm(List<Message> newestFirst, boolean hasAllMessages) {
+            if (evicted) {
+                return EVICTED;
+            }
+            long delta = 0;
+            if (!warm) {
+                complete = hasAllMessages;
+                for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                    delta += insert(newestFirst.get(i), false);
+                }
+                warm = true;
+            }
+            return delta;
+        }
+
+        synchronized List<Message> page(Long before, Long after, int limit) {
+            lastAccess = System.nanoTime();
+            if (!warm) {
+                // A cold buffer only holds what was written since it was created, which may have gaps
+                return null;
+            }
+            if (size == 0) {
+                return complete ? new ArrayList<>() : null;
+            }
+            List<Message> result = new ArrayList<>(Math.min(limit, size));
+            if (after != null) {
+                if (after < get(0).getId() && !complete) {
+                    return null;
+                }
+                for (int i = 0; i < size && result.size() < limit; i++) {
+                    if (get(i).getId() > after) {
+                        result.add(get(i).copy());
+                    }
+                }
+                return result;
+            }
+            int end = size;
+            while (before != null && end > 0 && get(end - 1).getId() >= before) {
+                end--;
+            }
+            int start = Math.max(0, end - limit);
+            if (end - start < limit && !complete) {
+                return null;
+            }
+            for (int i = start; i < end; i++) {
+                result.add(get(i).copy());
+            }
+            return result;
+        }
+
+        synchronized List<Message> since(long seq) {
+            lastAccess = System.nanoTime();
+            if (!warm) {
+                return null;
+            }
+            boolean reachesBack = complete;
+            List<Message> result = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Message message = get(i);
+                if (message.getSeq() == null || message.getSeq() <= seq) {
+                    reachesBack = true;
+                } else {
+                    result.add(message.copy());
+                }
+            }
+            if (!reachesBack) {
+                return null;
+            }
+            // Id order and sequence order only differ when saves raced
+            result.sort(Comparator.comparing(Message::getSeq));
+            return result;
+        }
+
+        synchronized Message find(long id) {
+            int index = indexOf(id);
+            return index >= 0 ? get(index).copy() : null;
+        }
+
+        // Null when the message is not held
+        synchronized Message update(long id, Consumer<Message> change, AtomicLong totalBytes) {
+            int index = evicted ? -1 : indexOf(id);
+            if (index < 0) {
+                return null;
+            }
+            Message message = get(index);
+            long before = estimateBytes(message);
+            change.accept(message);
+            long delta = estimateBytes(message) - before;
+            bytes += delta;
+            totalBytes.addAndGet(delta);
+            return message.copy();
+        }
+
+        private int indexOf(long id) {
+            int low = 0;
+            int high = size - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midId = get(mid).getId();
+                if (midId < id) {
+                    low = mid + 1;
+                } else if (midId > id) {
+                    high = mid - 1;
+                } else {
+                    return mid;
+                }
+            }
+            return -1;
+        }
+
+        synchronized long evict() {
+            evicted = true;
+            return bytes;
+        }
+
+        private Message get(int index) {
+            return slots[(head + index) % slots.length];
+        }
+
+        private void set(int index, Message message) {
+            slots[(head + index) % slots.length] = message;
+        }
+
+        // Keeps the buffer sorted by id; concurrent saves can hand us ids slightly out of order. Warming
+        // never replaces: a live instance may be the one still queued for write-behind.
+        private long insert(Message message, boolean replace) {
+            int pos = size;
+            while (pos > 0 && get(pos - 1).getId() >= message.getId()) {
+                if (get(pos - 1).getId().equals(message.getId())) {
+                    if (!replace) {
+                        return 0;
+                    }
+                    // A newer copy, e.g. an edit relayed from another node, replaces the cached one
+                    long delta = estimateBytes(message) - estimateBytes(get(pos - 1));
+                    set(pos - 1, message);
+                    bytes += delta;
+                    return delta;
+                }
+                pos--;
+            }
+            long delta = 0;
+            if (size == slots.length) {
+                if (pos == 0) {
+                    // Older than everything we hold and no room left: it belongs to the uncached past
+                    complete = false;
+                    return 0;
+                }
+                delta -= estimateBytes(get(0));
+                slots[head] = null;
+                head = (head + 1) % slots.length;
+                size--;
+                pos--;
+                complete = false;
+            }
+            for (int i = size; i > pos; i--) {
+                set(i, get(i - 1));
+            }
+            set(pos, message);
+            size++;
+            delta += estimateBytes(message);
+            bytes += delta;
+            return delta;
+        }
+    }
+}
@@ -0,0 +1,281 @@
+package com.example.chat.service;
+
+import com.example.chat.archive.MessageArchive;
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.ChatRoom;
+import com.example.chat.model.Message;
+import com.example.chat.model.ReadCursor;
+import com.example.chat.model.RoomPage;
+import com.example.chat.model.RoomSummary;
+import com.example.chat.repository.ChatRoomRepository;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.repository.ReadCursorRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Room list state kept in memory: every room's newest message and sequence number, updated as messages are
+ * saved, and every active user's read position per room. A room summary with its unread count is two map
+ * lookups instead of a MAX and a COUNT query. Rooms and users are loaded on first use, both bounded caches;
+ * ids of rooms that do not exist are rejected rather than remembered. Read positions only
+ * move forward and are written back to {@code room_read_cursors} in one batch per flush interval; in a
+ * cluster another node may serve a user's position from its cache for up to {@code cursor-cache-ttl-minutes}.
+ */
+@Component
+public class RoomActivityTracker {
+    private static final Logger logger = LoggerFactory.getLogger(RoomActivityTracker.class);
+    public static final int MAX_PAGE_SIZE = 100;
+
+    @Autowired
+    private ChatRoomRepository chatRoomRepository;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private ReadCursorRepository readCursorRepository;
+
+    @Autowired
+    private UserDirectory userDirectory;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.rooms.activity-cache-size:100000}")
+    private long activityCacheSize;
+
+    @Value("${chat.rooms.cursor-cache-size:100000}")
+    private long cursorCacheSize;
+
+    @Value("${chat.rooms.cursor-cache-ttl-minutes:30}")
+    private long cursorCacheTtlMinutes;
+
+    // roomId -> newest activity; an evicted room is loaded again from the table or the archive
+    private Map<Long, Activity> latest;
+    // userId -> roomId -> last read seq
+    private Cache<Long, Map<Long, Long>> cursors;
+    // Positions not yet written back; a reload after eviction overlays them
+    private final Map<CursorKey, Long> pendingCursors = new ConcurrentHashMap<>();
+    private final Set<Long> changedRooms = ConcurrentHashMap.newKeySet();
+    private final Queue<ChatRoom> createdRooms = new ConcurrentLinkedQueue<>();
+
+    @PostConstruct
+    public void init() {
+        latest = Caffeine.newBuilder()
+                .maximumSize(activityCacheSize)
+                .<Long, Activity>build()
+                .asMap();
+        cursors = Caffeine.newBuilder()
+                .maximumSize(cursorCacheSize)
+                .expireAfterAccess(Duration.ofMinutes(cursorCacheTtlMinutes))
+                .build();
+        Gauge.builder("chat.rooms.cursors.pending", pendingCursors, Map::size).register(meterRegistry);
+    }
+
+    /** A message saved on this node; the room shows up in the next activity push. */
+    public void messageSaved(Message message) {
+        record(message);
+        changedRooms.add(message.getRoomId());
+    }
+
+    /** A message saved elsewhere, e.g. on another cluster node that pushes the activity itself. */
+    public void record(Message message) {
+        if (message.getSeq() == null) {
+            return;
+        }
+        // A copy: the saved instance is the cached one that later edits change in place
+        Activity activity = new Activity(message.getRoomId(), message.getSeq(), message.copy());
+        latest.merge(message.getRoomId(), activity, RoomActivityTracker::newer);
+    }
+
+    public void roomCreated(ChatRoom room) {
+        latest.putIfAbsent(room.getId(), new Activity(room.getId(), 0, null));
+        createdRooms.add(room);
+    }
+
+    /** Starts a user's read position at the room's newest message the first time they join it. */
+    public void joined(Long userId, Long roomId) {
+        long seq = existing(roomId).lastSeq();
+        if (cursorsOf(userId).putIfAbsent(roomId, seq) == null) {
+            pendingCursors.merge(new CursorKey(userId, roomId), seq, Math::max);
+        }
+    }
+
+    public void markRead(Long userId, Long roomId, long seq) {
+        long capped = Math.min(seq, existing(roomId).lastSeq());
+        if (capped < 0) {
+            return;
+        }
+        Map<Long, Long> read = cursorsOf(userId);
+        if (capped > read.getOrDefault(roomId, -1L)) {
+            read.merge(roomId, capped, Math::max);
+            pendingCursors.merge(new CursorKey(userId, roomId), capped, Math::max);
+        }
+    }
+
+    /** Rooms with ids above {@code after}, in id order, with the user's unread counts. */
+    public RoomPage page(Long userId, Long after, int limit) {
+        if (limit < 1 || limit > MAX_PAGE_SIZE) {
+            throw new CustomException("Limit must be between 1 and " + MAX_PAGE_SIZE, 400);
+        }
+        try {
+            List<ChatRoom> rooms = chatRoomRepository.findByIdGreaterThanOrderByIdAsc(after != null ? after : 0L, Limit.of(limit));
+            Map<Long, Long> read = userId != null ? cursorsOf(userId) : Map.of();
+            List<RoomSummary> summaries = new ArrayList<>(rooms.size());
+            List<Message> lastMessages = new ArrayList<>();
+            for (ChatRoom room : rooms) {
+                Activity activity = activity(room.getId());
+                Long lastRead = read.get(room.getId());
+                long unread = lastRead != null ? Math.max(0, activity.lastSeq() - lastRead) : 0;
+                // Names go on a copy; the activity's message is shared with the room list push
+                Message lastMessage = activity.lastMessage() != null ? activity.lastMessage().copy() : null;
+                summaries.add(new RoomSummary(room.getId(), room.getName(), activity.lastSeq(), lastMessage, lastRead, unread));
+                if (lastMessage != null) {
+                    lastMessages.add(lastMessage);
+                }
+            }
+            userDirectory.resolveUsernames(lastMessages);
+            Long nextCursor = rooms.size() == limit ? rooms.get(rooms.size() - 1).getId() : null;
+            return new RoomPage(summaries, nextCursor);
+        } catch (Exception e) {
+            logger.error("Error fetching room list after {}: {}", after, e.getMessage(), e);
+            throw new CustomException("Failed to fetch chat rooms", 500);
+        }
+    }
+
+    /** Rooms created since the last call, oldest first. */
+    public List<ChatRoom> drainCreated() {
+        List<ChatRoom> created = new ArrayList<>();
+        ChatRoom room;
+        while ((room = createdRooms.poll()) != null) {
+            created.add(room);
+        }
+        return created;
+    }
+
+    /** The newest state of every room that got messages since the last call. */
+    public List<Activity> drainChanged() {
+        List<Activity> changed = new ArrayList<>();
+        for (Iterator<Long> rooms = changedRooms.iterator(); rooms.hasNext(); ) {
+            Long roomId = rooms.next();
+            rooms.remove();
+            Activity activity = activity(roomId);
+            if (activity != null) {
+                changed.add(activity);
+            }
+        }
+        return changed;
+    }
+
+    @Scheduled(fixedDelayString = "${chat.rooms.cursor-flush-interval-ms:2000}")
+    public void flushCursors() {
+        if (pendingCursors.isEmpty()) {
+            return;
+        }
+        List<Object[]> batch = new ArrayList<>();
+        for (Map.Entry<CursorKey, Long> entry : pendingCursors.entrySet()) {
+            // Only taken if nobody advanced it meanwhile; otherwise the newer value goes next time
+            if (pendingCursors.remove(entry.getKey(), entry.getValue())) {
+                batch.add(new Object[]{entry.getKey().userId(), entry.getKey().roomId(), entry.getValue(), entry.getValue()});
+            }
+        }
+        try {
+            jdbcTemplate.batchUpdate("INSERT INTO room_read_cursors (user_id, room_id, last_read_seq) VALUES (?, ?, ?) "
+                    + "ON DUPLICATE KEY UPDATE last_read_seq = GREATEST(last_read_seq, ?)", batch);
+            logger.debug("Saved {} read positions", batch.size());
+        } catch (Exception e) {
+            logger.error("Error saving {} read positions: {}", batch.size(), e.getMessage(), e);
+            for (Object[] row : batch) {
+                pendingCursors.merge(new CursorKey((Long) row[0], (Long) row[1]), (Long) row[2], Math::max);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushCursors();
+    }
+
+    private Activity existing(Long roomId) {
+        Activity activity = activity(roomId);
+        if (activity == null) {
+            throw new CustomException("Chat room not found", 404);
+        }
+        return activity;
+    }
+
+    // Loaded outside the map so a slow query never blocks saves to other rooms; a save racing the load wins.
+    // Null for rooms that do not exist, which are not cached.
+    private Activity activity(Long roomId) {
+        Activity known = latest.get(roomId);
+        if (known != null) {
+            return known;
+        }
+        List<Message> newest = messageRepository.findByRoomIdOrderByIdDesc(roomId, Limit.of(1));
+        if (newest.isEmpty()) {
+            if (!chatRoomRepository.existsById(roomId)) {
+                return null;
+            }
+            // Rooms archived before the archiver kept their newest message in the table
+            newest = messageArchive.page(roomId, null, null, 1);
+        }
+        Message message = newest.isEmpty() ? null : newest.get(0);
+        long seq = message != null && message.getSeq() != null ? message.getSeq() : 0;
+        return latest.merge(roomId, new Activity(roomId, seq, message), RoomActivityTracker::newer);
+    }
+
+    // An equal seq is the same message again, edited or deleted, and replaces the old copy
+    private static Activity newer(Activity current, Activity next) {
+        return next.lastSeq() >= current.lastSeq() ? next : current;
+    }
+
+    private Map<Long, Long> cursorsOf(Long userId) {
+        return cursors.get(userId, id -> {
+            Map<Long, Long> loaded = new ConcurrentHashMap<>();
+            for (ReadCursor cursor : readCursorRepository.findByUserId(id)) {
+                loaded.put(cursor.getRoomId(), cursor.getLastReadSeq());
+            }
+            pendingCursors.forEach((key, seq) -> {
+                if (key.userId().equals(id)) {
+                    loaded.merge(key.roomId(), seq, Math::max);
+                }
+            });
+            return loaded;
+        });
+    }
+
+    /** A room's newest sequence number and message, as pushed to room list subscribers. */
+    public record Activity(Long roomId, long lastSeq, Message lastMessage) {
+    }
+
+    private record CursorKey(Long userId, Long roomId) {
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.chat.service;
+
+import com.example.chat.archive.MessageArchive;
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.repository.MessageRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Assigns each saved message the next sequence number of its room. A standalone node counts in memory,
+ * starting from the highest sequence stored for the room in the table or the archive; in a cluster every
+ * number is taken from a locked row in {@code room_sequences} so nodes never hand out the same one. Numbers are unique and
+ * increasing per room but may skip a value when a save fails.
+ */
+@Component
+public class RoomSequencer {
+    private static final Logger logger = LoggerFactory.getLogger(RoomSequencer.class);
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    private final Map<Long, AtomicLong> counters = new ConcurrentHashMap<>();
+    private final Set<Long> checkedRooms = ConcurrentHashMap.newKeySet();
+    private volatile boolean tableReady;
+
+    public long next(Long roomId) {
+        if (!clusterBus.isClustered()) {
+            return counters.computeIfAbsent(roomId, id -> new AtomicLong(maxStoredSeq(id)))
+                    .incrementAndGet();
+        }
+        try {
+            return nextFromDatabase(roomId);
+        } catch (DuplicateKeyException e) {
+            // Another node created the room's row between our SELECT and INSERT; it is visible now
+            return nextFromDatabase(roomId);
+        }
+    }
+
+    private long nextFromDatabase(Long roomId) {
+        if (!tableReady) {
+            jdbcTemplate.execute("CREATE TABLE IF NOT EXISTS room_sequences ("
+                    + "room_id BIGINT NOT NULL PRIMARY KEY, next_val BIGINT NOT NULL)");
+            tableReady = true;
+        }
+        Long seq = transactionTemplate.execute(status -> {
+            Long current = jdbcTemplate.query(
+                    "SELECT next_val FROM room_sequences WHERE room_id = ? FOR UPDATE",
+                    rs -> rs.next() ? rs.getLong(1) : null, roomId);
+            long next = current != null ? current : 1;
+            if (!checkedRooms.contains(roomId)) {
+                // The row may lag behind numbers handed out while this room was sequenced in memory
+                next = Math.max(next, maxStoredSeq(roomId) + 1);
+            }
+            if (current == null) {
+                jdbcTemplate.update("INSERT INTO room_sequences (room_id, next_val) VALUES (?, ?)", roomId, next + 1);
+                logger.debug("Started sequence for room {} at {}", roomId, next);
+            } else {
+                jdbcTemplate.update("UPDATE room_sequences SET next_val = ? WHERE room_id = ?", next + 1, roomId);
+            }
+            return next;
+        });
+        checkedRooms.add(roomId);
+        return seq;
+    }
+
+    // Rooms archived before the archiver kept their newest row hot may have no messages left in the table
+    private long maxStoredSeq(Long roomId) {
+        return Math.max(messageRepository.findMaxSeqByRoomId(roomId), messageArchive.maxArchivedSeq(roomId));
+    }
+}
@@ -0,0 +1,155 @@
+package com.example.chat.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.Base64;
+
+/**
+ * Issues and checks stateless session tokens of the form {@code v1.<userId>.<username>.<expiry>.<signature>},
+ * where the username is base64url encoded and the signature is an HMAC-SHA256 over everything before it.
+ * Checking a token needs no database access and no bcrypt; results are additionally cached so a
+ * reconnecting client costs a hash lookup. All nodes of a cluster must share {@code chat.auth.token-secret}.
+ */
+@Service
+public class TokenService {
+    private static final Logger logger = LoggerFactory.getLogger(TokenService.class);
+    private static final String VERSION = "v1";
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.auth.token-secret:}")
+    private String secret;
+
+    @Value("${chat.auth.token-ttl-minutes:720}")
+    private long ttlMinutes;
+
+    @Value("${chat.auth.token-cache-size:100000}")
+    private long cacheSize;
+
+    private SecretKeySpec key;
+    private ThreadLocal<Mac> macs;
+    private Cache<String, Claims> verified;
+    private Counter cacheHits;
+    private Counter signatureChecks;
+    private Counter rejected;
+
+    @PostConstruct
+    public void init() {
+        byte[] keyBytes;
+        if (StringUtils.hasText(secret)) {
+            keyBytes = secret.getBytes(StandardCharsets.UTF_8);
+        } else {
+            keyBytes = new byte[32];
+            new SecureRandom().nextBytes(keyBytes);
+            logger.warn("chat.auth.token-secret is not set; using a random key, so tokens do not survive a restart "
+                    + "and are not accepted by other cluster nodes");
+        }
+        key = new SecretKeySpec(keyBytes, ALGORITHM);
+        macs = ThreadLocal.withInitial(this::newMac);
+        verified = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(Math.min(ttlMinutes, 10)))
+                .build();
+        cacheHits = Counter.builder("chat.auth.token.verifications").tag("outcome", "cached").register(meterRegistry);
+        signatureChecks = Counter.builder("chat.auth.token.verifications").tag("outcome", "verified").register(meterRegistry);
+        rejected = Counter.builder("chat.auth.token.verifications").tag("outcome", "rejected").register(meterRegistry);
+    }
+
+    public String issue(Long userId, String username) {
+        long expiresAt = System.currentTimeMillis() / 1000 + ttlMinutes * 60;
+        String body = VERSION + "." + userId + "."
+                + ENCODER.encodeToString(username.getBytes(StandardCharsets.UTF_8)) + "." + expiresAt;
+        return body + "." + ENCODER.encodeToString(sign(body));
+    }
+
+    /** Returns the claims of a valid, unexpired token, or {@code null}. */
+    public Claims verify(String token) {
+        if (!StringUtils.hasText(token)) {
+            return null;
+        }
+        long now = System.currentTimeMillis() / 1000;
+        Claims claims = verified.getIfPresent(token);
+        if (claims != null) {
+            if (claims.expiresAt() > now) {
+                cacheHits.increment();
+                return claims;
+            }
+            verified.invalidate(token);
+        }
+        claims = parse(token);
+        if (claims == null || claims.expiresAt() <= now) {
+            rejected.increment();
+            return null;
+        }
+        signatureChecks.increment();
+        verified.put(token, claims);
+        return claims;
+    }
+
+    /** Extracts the token from an {@code Authorization: Bearer ...} header value. */
+    public static String bearer(String header) {
+        return header != null && header.regionMatches(true, 0, "Bearer ", 0, 7) ? header.substring(7).trim() : null;
+    }
+
+    private Claims parse(String token) {
+        int signatureStart = token.lastIndexOf('.');
+        if (signatureStart < 0) {
+            return null;
+        }
+        String body = token.substring(0, signatureStart);
+        String[] parts = body.split("\\.");
+        if (parts.length != 4 || !VERSION.equals(parts[0])) {
+            return null;
+        }
+        try {
+            byte[] signature = DECODER.decode(token.substring(signatureStart + 1));
+            if (!MessageDigest.isEqual(signature, sign(body))) {
+                return null;
+            }
+            return new Claims(Long.valueOf(parts[1]), new String(DECODER.decode(parts[2]), StandardCharsets.UTF_8),
+                    Long.parseLong(parts[3]));
+        } catch (IllegalArgumentException e) {
+            logger.debug("Malformed token: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private byte[] sign(String body) {
+        return macs.get().doFinal(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Mac newMac() {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("HMAC-SHA256 is not available", e);
+        }
+    }
+
+    /** What a valid token says about its holder; {@code expiresAt} is in epoch seconds. */
+    public record Claims(Long userId, String username, long expiresAt) {
+    }
+}
@@ -0,0 +1,104 @@
+package com.example.chat.service;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.Message;
+import com.example.chat.model.UserSummary;
+import com.example.chat.repository.UserRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Resolves user ids to display names through a bounded cache of {@link UserSummary} projections. Misses for
+ * a whole batch are loaded with one {@code IN} query, so rendering a page of messages costs at most one
+ * round trip however many senders it has. Usernames never change, so entries only leave the cache by size
+ * or age.
+ */
+@Service
+public class UserDirectory {
+    public static final int MAX_BATCH_SIZE = 500;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.users.cache-size:100000}")
+    private long cacheSize;
+
+    @Value("${chat.users.cache-ttl-minutes:60}")
+    private long cacheTtlMinutes;
+
+    private Cache<Long, UserSummary> summaries;
+
+    @PostConstruct
+    public void init() {
+        summaries = Caffeine.newBuilder()
+                .maximumSize(cacheSize)
+                .expireAfterWrite(Duration.ofMinutes(cacheTtlMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, summaries, "userSummaries");
+    }
+
+    /** Summaries of the given users that exist, keyed by id. */
+    public Map<Long, UserSummary> findAll(Collection<Long> ids) {
+        return summaries.getAll(ids, this::load);
+    }
+
+    /** The batch endpoint's view: summaries of the existing users among {@code ids}, in request order. */
+    public List<UserSummary> lookup(List<Long> ids) {
+        if (ids.size() > MAX_BATCH_SIZE) {
+            throw new CustomException("At most " + MAX_BATCH_SIZE + " user ids per request", 400);
+        }
+        Map<Long, UserSummary> found = findAll(ids);
+        return ids.stream().distinct().map(found::get).filter(Objects::nonNull).toList();
+    }
+
+    public UserSummary find(Long id) {
+        return findAll(List.of(id)).get(id);
+    }
+
+    /** Fills in the sender name of every message that does not carry one yet. */
+    public void resolveUsernames(Collection<Message> messages) {
+        Set<Long> ids = new HashSet<>();
+        for (Message message : messages) {
+            if (message.getUsername() == null && message.getUserId() != null) {
+                ids.add(message.getUserId());
+            }
+        }
+        if (ids.isEmpty()) {
+            return;
+        }
+        Map<Long, UserSummary> found = findAll(ids);
+        for (Message message : messages) {
+            UserSummary sender = message.getUsername() == null ? found.get(message.getUserId()) : null;
+            if (sender != null) {
+                message.setUsername(sender.username());
+            }
+        }
+    }
+
+    private Map<Long, UserSummary> load(Set<? extends Long> ids) {
+        Map<Long, UserSummary> loaded = new HashMap<>();
+        for (UserSummary summary : userRepository.findSummariesByIdIn(Set.copyOf(ids))) {
+            loaded.put(summary.id(), summary);
+        }
+        return loaded;
+    }
+}
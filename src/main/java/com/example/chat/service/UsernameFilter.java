@@ -0,0 +1,137 @@
+package com.example.chat.service;
+
+import com.example.chat.repository.UserRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Stream;
+
+/**
+ * Bloom filter over all taken usernames, so "is this name available" is answered from memory for names
+ * nobody has. A hit may be a false positive (about {@code false-positive-rate}) and is confirmed against
+ * the database by the caller. Names are lower-cased because the unique key compares case-insensitively.
+ * Registrations on other cluster nodes are not seen here; the answer is advisory and the unique constraint
+ * stays the authority.
+ */
+@Component
+public class UsernameFilter {
+    private static final Logger logger = LoggerFactory.getLogger(UsernameFilter.class);
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.auth.username-filter.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${chat.auth.username-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    private AtomicLongArray bits;
+    private long bitCount;
+    private int hashCount;
+    // Until every existing name is loaded a miss proves nothing
+    private volatile boolean ready;
+    private Counter misses;
+    private Counter hits;
+
+    @PostConstruct
+    public void init() {
+        bitCount = Math.max(64, (long) Math.ceil(-expectedUsers * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        hashCount = Math.max(1, (int) Math.round((double) bitCount / expectedUsers * Math.log(2)));
+        bits = new AtomicLongArray((int) ((bitCount + 63) / 64));
+        misses = Counter.builder("chat.auth.username.filter").tag("outcome", "absent").register(meterRegistry);
+        hits = Counter.builder("chat.auth.username.filter").tag("outcome", "maybe").register(meterRegistry);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Thread.ofPlatform().daemon().name("username-filter-loader").start(() -> {
+            try {
+                TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+                readOnly.setReadOnly(true);
+                long loaded = readOnly.execute(status -> {
+                    long[] count = new long[1];
+                    try (Stream<String> usernames = userRepository.streamUsernames()) {
+                        usernames.forEach(username -> {
+                            add(username);
+                            count[0]++;
+                        });
+                    }
+                    return count[0];
+                });
+                ready = true;
+                logger.info("Username filter loaded with {} names ({} bits, {} hashes)", loaded, bitCount, hashCount);
+            } catch (Exception e) {
+                logger.error("Failed to load username filter: {}", e.getMessage(), e);
+            }
+        });
+    }
+
+    public void add(String username) {
+        long hash = hash(username);
+        long step = mix(hash) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            int word = (int) (bit >>> 6);
+            long mask = 1L << bit;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+        }
+    }
+
+    /** {@code false} means the name is definitely not taken; {@code true} needs confirming. */
+    public boolean mightContain(String username) {
+        if (!ready) {
+            return true;
+        }
+        long hash = hash(username);
+        long step = mix(hash) | 1;
+        for (int i = 0; i < hashCount; i++) {
+            long bit = Math.floorMod(hash + i * step, bitCount);
+            if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                misses.increment();
+                return false;
+            }
+        }
+        hits.increment();
+        return true;
+    }
+
+    // 64-bit FNV-1a over the lower-cased UTF-8 bytes
+    private static long hash(String username) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : username.toLowerCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    // Final mixing step of SplitMix64
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+}
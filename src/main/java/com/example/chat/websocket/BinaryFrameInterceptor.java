@@ -0,0 +1,101 @@
+package com.example.chat.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.server.ServerHttpRequest;
+import org.springframework.http.server.ServerHttpResponse;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.server.HandshakeInterceptor;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lets clients of the native {@code /chat-ws} endpoint receive events as CBOR or Smile in binary
+ * WebSocket frames. A client opts in with a {@code payload-format} header on CONNECT; SockJS sessions and
+ * clients that do not ask keep getting JSON text frames. Outbound events stay JSON inside the broker and
+ * are re-encoded only on the way to a binary session, where they carry {@code content-type:
+ * application/octet-stream} (which is what makes Spring send a binary frame) and {@code payload-format}.
+ */
+@Component
+public class BinaryFrameInterceptor implements ChannelInterceptor, HandshakeInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(BinaryFrameInterceptor.class);
+    static final String FORMAT_HEADER = "payload-format";
+    private static final String NATIVE_ATTRIBUTE = "chat.nativeWebSocket";
+
+    @Autowired
+    private PayloadCodec payloadCodec;
+
+    private final Map<String, PayloadFormat> sessionFormats = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean beforeHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+                                   Map<String, Object> attributes) {
+        attributes.put(NATIVE_ATTRIBUTE, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterHandshake(ServerHttpRequest request, ServerHttpResponse response, WebSocketHandler wsHandler,
+                               Exception exception) {
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        SimpMessageType type = SimpMessageHeaderAccessor.getMessageType(message.getHeaders());
+        if (type == SimpMessageType.CONNECT) {
+            negotiate(message);
+            return message;
+        }
+        if (type != SimpMessageType.MESSAGE || sessionFormats.isEmpty()) {
+            return message;
+        }
+        PayloadFormat format = sessionFormats.get(SimpMessageHeaderAccessor.getSessionId(message.getHeaders()));
+        if (format == null || !(message.getPayload() instanceof byte[] json)) {
+            return message;
+        }
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.wrap(message);
+        MimeType contentType = accessor.getContentType();
+        if (contentType == null || !MimeTypeUtils.APPLICATION_JSON.equalsTypeAndSubtype(contentType)) {
+            return message;
+        }
+        accessor.setContentType(MimeTypeUtils.APPLICATION_OCTET_STREAM);
+        accessor.setNativeHeader(FORMAT_HEADER, format.name().toLowerCase(Locale.ROOT));
+        return MessageBuilder.createMessage(payloadCodec.transcode(json, format), accessor.getMessageHeaders());
+    }
+
+    private void negotiate(Message<?> message) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor == null || !StompCommand.CONNECT.equals(accessor.getCommand())) {
+            return;
+        }
+        PayloadFormat format = PayloadFormat.named(accessor.getFirstNativeHeader(FORMAT_HEADER));
+        Map<String, Object> attributes = accessor.getSessionAttributes();
+        if (!format.isBinary() || attributes == null || !attributes.containsKey(NATIVE_ATTRIBUTE)) {
+            return;
+        }
+        sessionFormats.put(accessor.getSessionId(), format);
+        logger.debug("Session {} receives {} frames", accessor.getSessionId(), format);
+    }
+
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        sessionFormats.remove(event.getSessionId());
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.chat.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.availability.AvailabilityChangeEvent;
+import org.springframework.boot.availability.ReadinessState;
+import org.springframework.context.ApplicationEventPublisher;
+import org.springframework.context.event.ContextRefreshedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.messaging.simp.broker.BrokerAvailabilityEvent;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Marks the instance ready ({@code /actuator/health/readiness}) as soon as STOMP connections are accepted:
+ * the context is refreshed, so the web server and the WebSocket handlers are running, and the broker is
+ * available. Spring Boot would otherwise wait for {@code ApplicationReadyEvent}, after every startup listener
+ * and runner. When the broker goes away, e.g. on shutdown, the instance reports itself as refusing traffic
+ * so load balancers stop sending new connections first.
+ */
+@Component
+public class BrokerReadiness {
+    private static final Logger logger = LoggerFactory.getLogger(BrokerReadiness.class);
+
+    @Autowired
+    private ApplicationEventPublisher eventPublisher;
+
+    private volatile boolean refreshed;
+    private volatile boolean brokerAvailable;
+
+    @EventListener
+    public void onRefreshed(ContextRefreshedEvent event) {
+        refreshed = true;
+        update();
+    }
+
+    @EventListener
+    public void onBrokerAvailability(BrokerAvailabilityEvent event) {
+        brokerAvailable = event.isBrokerAvailable();
+        update();
+    }
+
+    private synchronized void update() {
+        if (!refreshed) {
+            return;
+        }
+        if (brokerAvailable) {
+            logger.info("Accepting STOMP connections {} ms after JVM start", ManagementFactory.getRuntimeMXBean().getUptime());
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.ACCEPTING_TRAFFIC);
+        } else {
+            logger.info("STOMP broker unavailable, refusing traffic");
+            AvailabilityChangeEvent.publish(eventPublisher, this, ReadinessState.REFUSING_TRAFFIC);
+        }
+    }
+}
@@ -2,117 +2,323 @@ package com.example.chat.websocket;
 
 import com.example.chat.exception.CustomException;
 import com.example.chat.model.Message;
+import com.example.chat.model.MessageDelta;
 import com.example.chat.service.ChatService;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.example.chat.service.RoomActivityTracker;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import com.fasterxml.jackson.databind.exc.InvalidTypeIdException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.messaging.handler.annotation.DestinationVariable;
 import org.springframework.messaging.handler.annotation.MessageMapping;
+import org.springframework.context.event.EventListener;
 import org.springframework.messaging.handler.annotation.Payload;
-import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
 import org.springframework.stereotype.Controller;
+import org.springframework.web.socket.messaging.SessionConnectedEvent;
+import org.springframework.web.socket.messaging.SessionDisconnectEvent;
+import org.springframework.web.socket.messaging.SessionSubscribeEvent;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
 @Controller
 public class ChatWebSocketHandler {
     private static final Logger logger = LoggerFactory.getLogger(ChatWebSocketHandler.class);
-    private final Map<String, List<String>> roomUsers = new ConcurrentHashMap<>();
     @Autowired
     private ChatService chatService;
     @Autowired
-    private SimpMessagingTemplate messagingTemplate;
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private RoomEventPublisher eventPublisher;
+    @Autowired
+    private RoomMembershipIndex membershipIndex;
+    @Autowired
+    private NotificationDispatcher notificationDispatcher;
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+    @Autowired
+    private TypingAggregator typingAggregator;
+    @Autowired
+    private RoomSerialExecutor roomExecutor;
+    @Autowired
+    private ClusterPresence clusterPresence;
+    @Autowired
+    private ClusterRelay clusterRelay;
+    @Autowired
+    private PayloadCodec payloadCodec;
+    @Autowired
+    private RoomActivityTracker roomActivity;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.messages.replay-max:500}")
+    private int replayMax;
+
+    // Disconnect events may arrive more than once per session, so sessions are counted as a set
+    private final Set<String> connectedSessions = ConcurrentHashMap.newKeySet();
+    private Timer decodeTimer;
+    private Timer fanoutTimer;
+
+    @PostConstruct
+    public void init() {
+        decodeTimer = Timer.builder("chat.inbound.decode").register(meterRegistry);
+        fanoutTimer = Timer.builder("chat.broadcast.fanout").register(meterRegistry);
+        Gauge.builder("chat.ws.sessions.active", connectedSessions, Set::size).register(meterRegistry);
+        Gauge.builder("chat.rooms.active", presenceRegistry, PresenceRegistry::roomCount).register(meterRegistry);
+    }
 
     @MessageMapping("/room/{roomId}")
-    public void handleMessage(@DestinationVariable String roomId, @Payload String payload) throws Exception {
+    public void handleMessage(@DestinationVariable String roomId, @Payload byte[] payload, Principal principal,
+                              SimpMessageHeaderAccessor headerAccessor) throws Exception {
         try {
-            logger.debug("Received WebSocket message for room {}: {}", roomId, payload);
-            Map<String, Object> json = objectMapper.readValue(payload, Map.class);
-            String type = (String) json.get("type");
-
-            if ("message".equals(type)) {
-                Message msg = objectMapper.convertValue(json, Message.class);
-                logger.info("Processing message for room {} from user {}: {}", msg.getRoomId(), msg.getUserId(), msg.getMessageText());
-                msg = chatService.saveMessage(msg);
-                messagingTemplate.convertAndSend("/topic/room/" + roomId, Map.of(
-                        "type", "message",
-                        "data", msg
-                ));
-                broadcastNotification(msg);
-                logger.info("Message broadcasted to room {} by user {}", msg.getRoomId(), msg.getUserId());
-            } else if ("typing".equals(type)) {
-                String username = (String) json.get("username");
-                messagingTemplate.convertAndSend("/topic/room/" + roomId, Map.of(
-                        "type", "typing",
-                        "data", Map.of("username", username)
-                ));
-                logger.debug("Typing event from {} in room {}", username, roomId);
-            } else if ("join".equals(type)) {
-                String username = (String) json.get("username");
-                roomUsers.computeIfAbsent(roomId, k -> new ArrayList<>()).add(username);
-                logger.info("User {} joined room {}", username, roomId);
-                broadcastUserList(roomId);
-            } else if ("leave".equals(type)) {
-                String username = (String) json.get("username");
-                roomUsers.getOrDefault(roomId, new ArrayList<>()).remove(username);
-                logger.info("User {} left room {}", username, roomId);
-                broadcastUserList(roomId);
-            } else {
-                logger.warn("Unknown message type: {}", type);
-                throw new CustomException("Invalid message type", 400);
+            if (logger.isDebugEnabled()) {
+                logger.debug("Received WebSocket message for room {}: {}", roomId, new String(payload, StandardCharsets.UTF_8));
+            }
+            PayloadFormat format = PayloadFormat.of(headerAccessor.getContentType());
+            InboundEvent event = decodeTimer.record(() -> decode(payload, format));
+            switch (event) {
+                case InboundEvent.ChatMessage chat ->
+                        roomExecutor.execute(roomId, () -> handleChatMessage(roomId, chat, principal));
+                case InboundEvent.Typing typing -> {
+                    String username = username(principal, typing.username());
+                    typingAggregator.typing(roomId, username);
+                    logger.debug("Typing event from {} in room {}", username, roomId);
+                }
+                case InboundEvent.Join join -> {
+                    String sessionId = headerAccessor.getSessionId();
+                    String username = username(principal, join.username());
+                    // Rejects rooms that do not exist before anything is recorded for them
+                    if (principal instanceof StompPrincipal user) {
+                        roomActivity.joined(user.userId(), Long.valueOf(roomId));
+                    }
+                    membershipIndex.follow(username, Long.valueOf(roomId));
+                    clusterRelay.followed(username, Long.valueOf(roomId));
+                    if (presenceRegistry.join(sessionId, roomId, username)) {
+                        presenceChanged(roomId, "join", username);
+                    }
+                    sendUserList(sessionId, principal, roomId);
+                    logger.debug("User {} joined room {}", username, roomId);
+                }
+                case InboundEvent.Leave leave -> {
+                    String username = presenceRegistry.leave(headerAccessor.getSessionId(), roomId);
+                    if (username != null) {
+                        presenceChanged(roomId, "leave", username);
+                    }
+                    logger.debug("User {} left room {}", leave.username(), roomId);
+                }
+                case InboundEvent.Read read -> {
+                    if (principal instanceof StompPrincipal user && read.seq() != null) {
+                        roomActivity.markRead(user.userId(), Long.valueOf(roomId), read.seq());
+                    }
+                }
+                case InboundEvent.Edit edit -> {
+                    Long userId = signedIn(principal);
+                    roomExecutor.execute(roomId, () -> handleChange(roomId, () -> {
+                        Message msg = roomExecutor.withDatabasePermit(
+                                () -> chatService.editMessage(Long.valueOf(roomId), edit.messageId(), userId, edit.messageText()));
+                        clusterRelay.messageSaved(msg);
+                        eventPublisher.publish(RoomEventPublisher.roomTopic(roomId), new RoomEvent("edit", MessageDelta.Edited.of(msg)));
+                    }));
+                }
+                case InboundEvent.Delete delete -> {
+                    Long userId = signedIn(principal);
+                    roomExecutor.execute(roomId, () -> handleChange(roomId, () -> {
+                        Message msg = roomExecutor.withDatabasePermit(
+                                () -> chatService.deleteMessage(Long.valueOf(roomId), delete.messageId(), userId));
+                        clusterRelay.messageSaved(msg);
+                        eventPublisher.publish(RoomEventPublisher.roomTopic(roomId), new RoomEvent("delete", MessageDelta.Deleted.of(msg)));
+                    }));
+                }
+                case InboundEvent.React react -> {
+                    Long userId = signedIn(principal);
+                    boolean add = !Boolean.TRUE.equals(react.remove());
+                    roomExecutor.execute(roomId, () -> handleChange(roomId, () -> {
+                        MessageDelta.Reacted delta = roomExecutor.withDatabasePermit(
+                                () -> chatService.react(Long.valueOf(roomId), react.messageId(), userId, react.emoji(), add));
+                        if (delta != null) {
+                            // Only the newest count per message and emoji matters to a slow client
+                            eventPublisher.publishState(RoomEventPublisher.roomTopic(roomId), new RoomEvent("reaction", delta),
+                                    "reaction:" + delta.id() + ":" + delta.emoji());
+                        }
+                    }));
+                }
             }
         } catch (CustomException e) {
             logger.warn("WebSocket error: {}", e.getMessage());
-            messagingTemplate.convertAndSend("/topic/room/" + roomId, Map.of(
-                    "type", "error",
-                    "message", e.getMessage()
-            ));
+            publishError(roomId, e.getMessage());
         } catch (Exception e) {
             logger.error("Error handling WebSocket message for room {}: {}", roomId, e.getMessage(), e);
-            messagingTemplate.convertAndSend("/topic/room/" + roomId, Map.of(
-                    "type", "error",
-                    "message", "Server error"
-            ));
+            publishError(roomId, "Server error");
+        }
+    }
+
+    // The authenticated identity wins over whatever name the client put into the payload
+    private static String username(Principal principal, String claimed) {
+        return principal != null ? principal.getName() : claimed;
+    }
+
+    // Edits, deletes and reactions act on a user's own identity, never on one named in the payload
+    private static Long signedIn(Principal principal) {
+        if (principal instanceof StompPrincipal user) {
+            return user.userId();
         }
+        throw new CustomException("Sign in to change messages", 401);
     }
 
-    private void broadcastUserList(String roomId) {
-        List<String> usernames = roomUsers.getOrDefault(roomId, new ArrayList<>());
-        messagingTemplate.convertAndSend("/topic/room/" + roomId, Map.of(
-                "type", "userList",
-                "data", usernames
+    // Runs a message change on the room's serial executor, which leaves error reporting to us
+    private void handleChange(String roomId, Runnable change) {
+        try {
+            change.run();
+        } catch (CustomException e) {
+            logger.warn("WebSocket error: {}", e.getMessage());
+            publishError(roomId, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error changing a message in room {}: {}", roomId, e.getMessage(), e);
+            publishError(roomId, "Server error");
+        }
+    }
+
+    // Runs on the room's serial executor, so it reports its own failures
+    private void handleChatMessage(String roomId, InboundEvent.ChatMessage chat, Principal principal) {
+        try {
+            Message incoming = new Message();
+            incoming.setRoomId(Long.valueOf(roomId));
+            incoming.setUserId(principal instanceof StompPrincipal user ? user.userId() : chat.userId());
+            incoming.setMessageText(chat.messageText());
+            if (principal != null) {
+                incoming.setUsername(principal.getName());
+            }
+            logger.debug("Processing message for room {} from user {}: {}", incoming.getRoomId(), incoming.getUserId(), incoming.getMessageText());
+            Message msg = roomExecutor.withDatabasePermit(() -> chatService.saveMessage(incoming));
+            clusterRelay.messageSaved(msg);
+            fanoutTimer.record(() -> eventPublisher.publish(RoomEventPublisher.roomTopic(roomId), new RoomEvent("message", msg)));
+            notificationDispatcher.enqueue(msg, principal != null ? principal.getName() : null);
+            if (principal != null) {
+                typingAggregator.stopped(roomId, principal.getName());
+            }
+            logger.debug("Message broadcasted to room {} by user {}", msg.getRoomId(), msg.getUserId());
+        } catch (CustomException e) {
+            logger.warn("WebSocket error: {}", e.getMessage());
+            publishError(roomId, e.getMessage());
+        } catch (Exception e) {
+            logger.error("Error handling WebSocket message for room {}: {}", roomId, e.getMessage(), e);
+            publishError(roomId, "Server error");
+        }
+    }
+
+    private void publishError(String roomId, String message) {
+        eventPublisher.publish(RoomEventPublisher.roomTopic(roomId), Map.of(
+                "type", "error",
+                "message", message
         ));
-        logger.debug("Broadcasted user list for room {}: {}", roomId, usernames);
     }
 
-    private void broadcastNotification(Message message) throws Exception {
+    // One pass from the raw frame bytes to the typed event; "type" picks the record
+    private InboundEvent decode(byte[] payload, PayloadFormat format) {
         try {
-            String roomName = chatService.getRoomNameById(message.getRoomId());
-            String preview = message.getMessageText().length() > 20
-                    ? message.getMessageText().substring(0, 20) + "..."
-                    : message.getMessageText();
-            String jsonNotification = objectMapper.writeValueAsString(Map.of(
-                    "type", "notification",
-                    "data", Map.of(
-                            "roomId", message.getRoomId(),
-                            "roomName", roomName,
-                            "messageText", preview
-                    )
-            ));
-            for (String otherRoomId : roomUsers.keySet()) {
-                if (!otherRoomId.equals(String.valueOf(message.getRoomId()))) {
-                    messagingTemplate.convertAndSend("/topic/room/" + otherRoomId, jsonNotification);
-                }
+            return payloadCodec.read(payload, format, InboundEvent.class);
+        } catch (InvalidTypeIdException e) {
+            logger.warn("Unknown message type: {}", e.getTypeId());
+            throw new CustomException("Invalid message type", 400);
+        } catch (IOException e) {
+            logger.warn("Malformed WebSocket payload: {}", e.getMessage());
+            throw new CustomException("Malformed message", 400);
+        }
+    }
+
+    // A client re-subscribing to a room with "resume-from: <seq>" gets what it missed on /user/queue/replay
+    @EventListener
+    public void handleSubscribe(SessionSubscribeEvent event) {
+        StompHeaderAccessor accessor = StompHeaderAccessor.wrap(event.getMessage());
+        String resumeFrom = accessor.getFirstNativeHeader("resume-from");
+        String destination = accessor.getDestination();
+        if (resumeFrom == null || destination == null || !destination.startsWith(RoomEventPublisher.roomTopic(""))) {
+            return;
+        }
+        String roomId = destination.substring(RoomEventPublisher.roomTopic("").length());
+        try {
+            long seq = Long.parseLong(resumeFrom);
+            Long room = Long.valueOf(roomId);
+            // Queued behind the room's saves, so everything numbered up to the snapshot was already broadcast
+            roomExecutor.execute(roomId, () -> replay(accessor.getSessionId(), event.getUser(), room, seq));
+        } catch (NumberFormatException e) {
+            logger.warn("Ignoring resume-from {} for destination {}", resumeFrom, destination);
+        } catch (CustomException e) {
+            logger.warn("Skipping replay for destination {}: {}", destination, e.getMessage());
+        }
+    }
+
+    private void replay(String sessionId, Principal principal, Long roomId, long seq) {
+        try {
+            String user = principal != null ? principal.getName() : sessionId;
+            String queue = RoomEventPublisher.userQueue(user, "replay");
+            List<Message> missed = chatService.getMessagesSince(roomId, seq, replayMax);
+            if (missed == null) {
+                eventPublisher.publishToSession(sessionId, queue, new RoomEvent("resync", Map.of("roomId", roomId)));
+                logger.debug("Session {} missed more than {} messages in room {}, or archived ones, asked it to resync", sessionId, replayMax, roomId);
+            } else {
+                eventPublisher.publishToSession(sessionId, queue,
+                        new RoomEvent("replay", Map.of("roomId", roomId, "messages", missed)));
+                logger.debug("Replayed {} messages after seq {} in room {} to session {}", missed.size(), seq, roomId, sessionId);
             }
-            logger.debug("Notification sent for message in room {}: {}", message.getRoomId(), preview);
         } catch (Exception e) {
-            logger.error("Error broadcasting notification for room {}: {}", message.getRoomId(), e.getMessage(), e);
-            throw e;
+            logger.error("Error replaying room {} to session {}: {}", roomId, sessionId, e.getMessage(), e);
+        }
+    }
+
+    @EventListener
+    public void handleConnected(SessionConnectedEvent event) {
+        String sessionId = StompHeaderAccessor.wrap(event.getMessage()).getSessionId();
+        if (sessionId != null) {
+            connectedSessions.add(sessionId);
+        }
+    }
+
+    // Sockets that drop without sending "leave" still clear their presence here
+    @EventListener
+    public void handleDisconnect(SessionDisconnectEvent event) {
+        connectedSessions.remove(event.getSessionId());
+        for (PresenceRegistry.Departure departure : presenceRegistry.disconnect(event.getSessionId())) {
+            presenceChanged(departure.roomId(), "leave", departure.username());
+            logger.debug("User {} disconnected from room {}", departure.username(), departure.roomId());
         }
     }
-}
\ No newline at end of file
+
+    // The user's presence on this node changed; rooms only hear about it if no other node still has them
+    private void presenceChanged(String roomId, String action, String username) {
+        clusterPresence.announce(roomId, username, action.equals("join"));
+        if (!clusterPresence.isPresentElsewhere(roomId, username)) {
+            broadcastPresence(roomId, action, username);
+        }
+    }
+
+    private void broadcastPresence(String roomId, String action, String username) {
+        eventPublisher.publishState(RoomEventPublisher.roomTopic(roomId),
+                new RoomEvent("presence", Map.of("action", action, "username", username)), presenceKey(username));
+        logger.debug("Broadcasted presence {} of {} in room {}", action, username, roomId);
+    }
+
+    // A user's newest join or leave is all a slow client needs to know about them
+    static String presenceKey(String username) {
+        return "presence:" + username;
+    }
+
+    // The full list goes only to the joining session; everyone else just gets the delta
+    private void sendUserList(String sessionId, Principal principal, String roomId) {
+        String user = principal != null ? principal.getName() : sessionId;
+        eventPublisher.publishToSession(sessionId, RoomEventPublisher.userQueue(user, "presence"),
+                new RoomEvent("userList", Map.of("roomId", roomId, "users", clusterPresence.usersIn(roomId))));
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.chat.websocket;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.ClusterEvent;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Room presence across the cluster: this node's {@link PresenceRegistry} plus what every other node has
+ * announced. Nodes send deltas as they happen and a full snapshot every {@code presence-sync-ms}; a node
+ * that misses three syncs is considered gone and its users leave their rooms.
+ */
+@Component
+public class ClusterPresence {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterPresence.class);
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private PresenceRegistry presenceRegistry;
+
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Value("${chat.cluster.presence-sync-ms:10000}")
+    private long syncMs;
+
+    // nodeId -> roomId -> usernames present on that node
+    private final Map<String, NodeView> nodes = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(this::onEvent);
+    }
+
+    public void announce(String roomId, String username, boolean present) {
+        if (clusterBus.isClustered()) {
+            clusterBus.publish(ClusterEvent.presence(clusterBus.nodeId(), roomId, username, present));
+        }
+    }
+
+    public boolean isPresent(String roomId, String username) {
+        return presenceRegistry.isPresent(roomId, username) || isPresentElsewhere(roomId, username);
+    }
+
+    public boolean isPresentElsewhere(String roomId, String username) {
+        for (NodeView node : nodes.values()) {
+            if (node.contains(roomId, username)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Set<String> usersIn(String roomId) {
+        if (nodes.isEmpty()) {
+            return presenceRegistry.usersIn(roomId);
+        }
+        Set<String> users = new HashSet<>(presenceRegistry.usersIn(roomId));
+        for (NodeView node : nodes.values()) {
+            users.addAll(node.usersIn(roomId));
+        }
+        return users;
+    }
+
+    private void onEvent(ClusterEvent event) {
+        switch (event.kind()) {
+            case PRESENCE -> nodes.computeIfAbsent(event.origin(), id -> new NodeView())
+                    .apply(event.roomId(), event.username(), event.present());
+            case PRESENCE_SNAPSHOT -> nodes.computeIfAbsent(event.origin(), id -> new NodeView())
+                    .replace(event.presence());
+            default -> {
+                // room traffic is handled by ClusterRelay
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${chat.cluster.presence-sync-ms:10000}")
+    public void sync() {
+        if (!clusterBus.isClustered()) {
+            return;
+        }
+        clusterBus.publish(ClusterEvent.presenceSnapshot(clusterBus.nodeId(), presenceRegistry.snapshot()));
+        long deadline = System.nanoTime() - TimeUnit.MILLISECONDS.toNanos(syncMs * 3);
+        nodes.forEach((nodeId, node) -> {
+            if (node.lastSeen - deadline < 0 && nodes.remove(nodeId, node)) {
+                logger.warn("Cluster node {} stopped syncing presence, dropping its users", nodeId);
+                node.rooms.forEach((roomId, users) -> users.forEach(username -> {
+                    // Each node tells only its own subscribers, so the delta is not published cluster-wide
+                    if (!isPresent(roomId, username)) {
+                        eventPublisher.publishStateLocal(RoomEventPublisher.roomTopic(roomId),
+                                new RoomEvent("presence", Map.of("action", "leave", "username", username)),
+                                ChatWebSocketHandler.presenceKey(username));
+                    }
+                }));
+            }
+        });
+    }
+
+    private static final class NodeView {
+        private final Map<String, Set<String>> rooms = new ConcurrentHashMap<>();
+        private volatile long lastSeen = System.nanoTime();
+
+        void apply(String roomId, String username, boolean present) {
+            lastSeen = System.nanoTime();
+            if (present) {
+                rooms.computeIfAbsent(roomId, id -> ConcurrentHashMap.newKeySet()).add(username);
+            } else {
+                rooms.computeIfPresent(roomId, (id, users) -> {
+                    users.remove(username);
+                    return users.isEmpty() ? null : users;
+                });
+            }
+        }
+
+        void replace(Map<String, Set<String>> snapshot) {
+            lastSeen = System.nanoTime();
+            rooms.keySet().retainAll(snapshot.keySet());
+            snapshot.forEach((roomId, users) -> {
+                Set<String> copy = ConcurrentHashMap.newKeySet();
+                copy.addAll(users);
+                rooms.put(roomId, copy);
+            });
+        }
+
+        boolean contains(String roomId, String username) {
+            Set<String> users = rooms.get(roomId);
+            return users != null && users.contains(username);
+        }
+
+        Set<String> usersIn(String roomId) {
+            return rooms.getOrDefault(roomId, Set.of());
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.chat.websocket;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.ClusterEvent;
+import com.example.chat.model.Message;
+import com.example.chat.search.MessageSearchIndex;
+import com.example.chat.service.RecentMessageCache;
+import com.example.chat.service.RoomActivityTracker;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * Applies room traffic from other cluster nodes locally: forwarded broadcasts go to this node's
+ * subscribers, saved messages into the recent-message cache, search index and room list, and follows into the
+ * membership index, so history, search and notifications look the same whichever node a user is on.
+ */
+@Component
+public class ClusterRelay {
+    private static final Logger logger = LoggerFactory.getLogger(ClusterRelay.class);
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Autowired
+    private RoomMembershipIndex membershipIndex;
+
+    @Autowired
+    private RecentMessageCache recentMessageCache;
+
+    @Autowired
+    private MessageSearchIndex messageSearchIndex;
+
+    @Autowired
+    private RoomActivityTracker roomActivity;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PostConstruct
+    public void init() {
+        clusterBus.subscribe(this::onEvent);
+    }
+
+    public void messageSaved(Message message) {
+        if (!clusterBus.isClustered()) {
+            return;
+        }
+        try {
+            clusterBus.publish(ClusterEvent.message(clusterBus.nodeId(), objectMapper.writeValueAsBytes(message)));
+        } catch (Exception e) {
+            logger.error("Error forwarding message {} to the cluster: {}", message.getId(), e.getMessage(), e);
+        }
+    }
+
+    public void followed(String username, Long roomId) {
+        if (clusterBus.isClustered()) {
+            clusterBus.publish(ClusterEvent.follow(clusterBus.nodeId(), String.valueOf(roomId), username));
+        }
+    }
+
+    private void onEvent(ClusterEvent event) {
+        switch (event.kind()) {
+            case BROADCAST -> eventPublisher.deliverRemote(event.destinations(), event.payload(), event.headers());
+            case FOLLOW -> membershipIndex.follow(event.username(), Long.valueOf(event.roomId()));
+            case MESSAGE -> {
+                try {
+                    Message message = objectMapper.readValue(event.payload(), Message.class);
+                    recentMessageCache.add(message);
+                    messageSearchIndex.add(message);
+                    roomActivity.record(message);
+                } catch (Exception e) {
+                    logger.error("Error applying message from node {}: {}", event.origin(), e.getMessage(), e);
+                }
+            }
+            default -> {
+                // presence is handled by ClusterPresence, typing by TypingAggregator
+            }
+        }
+    }
+}
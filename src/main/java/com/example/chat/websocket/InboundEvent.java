@@ -0,0 +1,50 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
+import com.fasterxml.jackson.annotation.JsonSubTypes;
+import com.fasterxml.jackson.annotation.JsonTypeInfo;
+
+/**
+ * Frames clients send to {@code /app/room/{roomId}}. The {@code type} field selects the record, so a frame
+ * is decoded straight from its bytes in a single pass. The room always comes from the destination.
+ */
+@JsonTypeInfo(use = JsonTypeInfo.Id.NAME, property = "type")
+@JsonSubTypes({
+        @JsonSubTypes.Type(value = InboundEvent.ChatMessage.class, name = "message"),
+        @JsonSubTypes.Type(value = InboundEvent.Typing.class, name = "typing"),
+        @JsonSubTypes.Type(value = InboundEvent.Join.class, name = "join"),
+        @JsonSubTypes.Type(value = InboundEvent.Leave.class, name = "leave"),
+        @JsonSubTypes.Type(value = InboundEvent.Read.class, name = "read"),
+        @JsonSubTypes.Type(value = InboundEvent.Edit.class, name = "edit"),
+        @JsonSubTypes.Type(value = InboundEvent.Delete.class, name = "delete"),
+        @JsonSubTypes.Type(value = InboundEvent.React.class, name = "react")
+})
+@JsonIgnoreProperties(ignoreUnknown = true)
+public sealed interface InboundEvent {
+
+    record ChatMessage(Long userId, String messageText) implements InboundEvent {
+    }
+
+    record Typing(String username) implements InboundEvent {
+    }
+
+    record Join(String username) implements InboundEvent {
+    }
+
+    record Leave(String username) implements InboundEvent {
+    }
+
+    // The sender has seen the room up to this sequence number
+    record Read(Long seq) implements InboundEvent {
+    }
+
+    record Edit(Long messageId, String messageText) implements InboundEvent {
+    }
+
+    record Delete(Long messageId) implements InboundEvent {
+    }
+
+    // Adds the sender's reaction, or takes it back when "remove" is true
+    record React(Long messageId, String emoji, Boolean remove) implements InboundEvent {
+    }
+}
@@ -0,0 +1,268 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageHeaders;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeType;
+
+import java.io.IOException;
+import java.security.Principal;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps how fast frames reach {@code /app/room/{roomId}}, per user and per room, with separate limits for
+ * chat messages, typing and joins. The event type is found by streaming the frame's top-level fields up to
+ * {@code type} without binding anything, and a frame over its limit is dropped right here on the receiving
+ * thread, before it is queued, decoded or saved. Edits, deletes, reactions and frames whose type cannot be
+ * found count as chat messages; leave and read events are not limited.
+ * <p>
+ * A frame is charged to the user and the room only when both accept it: if the room is over its limit the
+ * user's charge is refunded, so a busy room does not eat into its members' own budgets. A sender whose chat
+ * message or join is dropped gets an {@code error} event on {@code /user/queue/errors}, at most once per
+ * {@code chat.ratelimit.notify-interval-ms}; dropped typing frames are not reported.
+ * <p>
+ * Each limit is a rate per second plus a burst, enforced with the generic cell rate algorithm: a bucket
+ * is one {@link AtomicLong} holding the time its next frame is due and is updated with a single CAS.
+ * A rate of 0 disables that limit.
+ */
+@Component
+public class InboundRateLimiter implements ChannelInterceptor {
+    private static final Logger logger = LoggerFactory.getLogger(InboundRateLimiter.class);
+    private static final String ROOM_PREFIX = "/app/room/";
+
+    enum Kind {
+        MESSAGE, TYPING, JOIN, LEAVE, READ;
+
+        static Kind of(String type) {
+            return switch (type) {
+                case "typing" -> TYPING;
+                case "join" -> JOIN;
+                case "leave" -> LEAVE;
+                case "read" -> READ;
+                default -> MESSAGE;
+            };
+        }
+    }
+
+    @Autowired
+    private PayloadCodec payloadCodec;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // The broker behind the publisher is configured by the same config that registers this interceptor
+    @Lazy
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Value("${chat.ratelimit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${chat.ratelimit.message.user-rate:5}")
+    private double messageUserRate;
+
+    @Value("${chat.ratelimit.message.user-burst:10}")
+    private int messageUserBurst;
+
+    @Value("${chat.ratelimit.message.room-rate:100}")
+    private double messageRoomRate;
+
+    @Value("${chat.ratelimit.message.room-burst:200}")
+    private int messageRoomBurst;
+
+    @Value("${chat.ratelimit.typing.user-rate:2}")
+    private double typingUserRate;
+
+    @Value("${chat.ratelimit.typing.user-burst:5}")
+    private int typingUserBurst;
+
+    @Value("${chat.ratelimit.typing.room-rate:50}")
+    private double typingRoomRate;
+
+    @Value("${chat.ratelimit.typing.room-burst:100}")
+    private int typingRoomBurst;
+
+    @Value("${chat.ratelimit.join.user-rate:2}")
+    private double joinUserRate;
+
+    @Value("${chat.ratelimit.join.user-burst:10}")
+    private int joinUserBurst;
+
+    @Value("${chat.ratelimit.join.room-rate:100}")
+    private double joinRoomRate;
+
+    @Value("${chat.ratelimit.join.room-burst:1000}")
+    private int joinRoomBurst;
+
+    @Value("${chat.ratelimit.max-buckets:200000}")
+    private long maxBuckets;
+
+    @Value("${chat.ratelimit.notify-interval-ms:5000}")
+    private long notifyIntervalMs;
+
+    private final Map<Kind, Limits> limits = new EnumMap<>(Kind.class);
+    private Cache<Object, Boolean> notified;
+
+    @PostConstruct
+    public void init() {
+        limits.put(Kind.MESSAGE, new Limits(Kind.MESSAGE, messageUserRate, messageUserBurst, messageRoomRate, messageRoomBurst));
+        limits.put(Kind.TYPING, new Limits(Kind.TYPING, typingUserRate, typingUserBurst, typingRoomRate, typingRoomBurst));
+        limits.put(Kind.JOIN, new Limits(Kind.JOIN, joinUserRate, joinUserBurst, joinRoomRate, joinRoomBurst));
+        notified = Caffeine.newBuilder()
+                .maximumSize(maxBuckets)
+                .expireAfterWrite(Duration.ofMillis(notifyIntervalMs))
+                .build();
+    }
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        if (!enabled || SimpMessageHeaderAccessor.getMessageType(message.getHeaders()) != SimpMessageType.MESSAGE) {
+            return message;
+        }
+        String destination = SimpMessageHeaderAccessor.getDestination(message.getHeaders());
+        if (destination == null || !destination.startsWith(ROOM_PREFIX) || !(message.getPayload() instanceof byte[] payload)) {
+            return message;
+        }
+        Object contentType = message.getHeaders().get(MessageHeaders.CONTENT_TYPE);
+        PayloadFormat format = PayloadFormat.of(contentType instanceof MimeType mime ? mime
+                : contentType instanceof String text ? MimeType.valueOf(text) : null);
+        Limits limit = limits.get(kind(payload, format));
+        if (limit == null) {
+            return message;
+        }
+        long now = System.nanoTime();
+        Principal user = SimpMessageHeaderAccessor.getUser(message.getHeaders());
+        Object userKey = user instanceof StompPrincipal principal ? principal.userId()
+                : user != null ? user.getName() : SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        String roomId = destination.substring(ROOM_PREFIX.length());
+        if (!limit.user.tryAcquire(userKey, now)) {
+            limit.userThrottled.increment();
+            logger.debug("Throttled {} from {} in {}", limit.kind, userKey, destination);
+            notifyThrottled(message, user, userKey, limit.kind, roomId);
+            return null;
+        }
+        if (!limit.room.tryAcquire(roomId, now)) {
+            limit.user.refund(userKey);
+            limit.roomThrottled.increment();
+            logger.debug("Throttled {} in {}", limit.kind, destination);
+            notifyThrottled(message, user, userKey, limit.kind, roomId);
+            return null;
+        }
+        return message;
+    }
+
+    // Only the first drop in each window is reported, so a flooding client does not get a flood back
+    private void notifyThrottled(Message<?> message, Principal user, Object userKey, Kind kind, String roomId) {
+        if (kind == Kind.TYPING || notified.asMap().putIfAbsent(userKey, Boolean.TRUE) != null) {
+            return;
+        }
+        String sessionId = SimpMessageHeaderAccessor.getSessionId(message.getHeaders());
+        if (sessionId == null) {
+            return;
+        }
+        eventPublisher.publishToSession(sessionId, RoomEventPublisher.userQueue(user != null ? user.getName() : sessionId, "errors"),
+                Map.of("type", "error", "roomId", roomId, "message", "You are sending too fast; some messages were not delivered"));
+    }
+
+    // Streams the top-level fields up to "type"; nested values are skipped unread and nothing is bound
+    Kind kind(byte[] payload, PayloadFormat format) {
+        try (JsonParser parser = payloadCodec.factory(format).createParser(payload)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return Kind.MESSAGE;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                boolean type = "type".equals(parser.currentName());
+                JsonToken value = parser.nextToken();
+                if (type) {
+                    return value == JsonToken.VALUE_STRING ? Kind.of(parser.getText()) : Kind.MESSAGE;
+                }
+                parser.skipChildren();
+            }
+        } catch (IOException e) {
+            // Malformed; the handler rejects it after it has been counted
+        }
+        return Kind.MESSAGE;
+    }
+
+    private final class Limits {
+        final Kind kind;
+        final Buckets user;
+        final Buckets room;
+        final Counter userThrottled;
+        final Counter roomThrottled;
+
+        Limits(Kind kind, double userRate, int userBurst, double roomRate, int roomBurst) {
+            this.kind = kind;
+            this.user = new Buckets(userRate, userBurst);
+            this.room = new Buckets(roomRate, roomBurst);
+            String type = kind.name().toLowerCase(Locale.ROOT);
+            userThrottled = Counter.builder("chat.inbound.throttled").tag("type", type).tag("scope", "user").register(meterRegistry);
+            roomThrottled = Counter.builder("chat.inbound.throttled").tag("type", type).tag("scope", "room").register(meterRegistry);
+        }
+    }
+
+    private final class Buckets {
+        private final long interval;
+        private final long tolerance;
+        private final Cache<Object, AtomicLong> dueTimes;
+
+        Buckets(double rate, int burst) {
+            this.interval = rate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / rate) : 0;
+            this.tolerance = interval * Math.max(0, burst - 1);
+            // An idle bucket is full again after tolerance + interval, so it can be forgotten by then
+            this.dueTimes = Caffeine.newBuilder()
+                    .maximumSize(maxBuckets)
+                    .expireAfterAccess(Duration.ofNanos(Math.max(tolerance + interval, TimeUnit.SECONDS.toNanos(1))))
+                    .build();
+        }
+
+        boolean tryAcquire(Object key, long now) {
+            if (interval == 0) {
+                return true;
+            }
+            AtomicLong due = dueTimes.get(key, k -> new AtomicLong(Long.MIN_VALUE));
+            while (true) {
+                long current = due.get();
+                long next = Math.max(current, now);
+                if (next - now > tolerance) {
+                    return false;
+                }
+                if (due.compareAndSet(current, next + interval)) {
+                    return true;
+                }
+            }
+        }
+
+        // Gives back a charge taken by tryAcquire for a frame that was dropped anyway
+        void refund(Object key) {
+            if (interval == 0) {
+                return;
+            }
+            AtomicLong due = dueTimes.getIfPresent(key);
+            if (due != null) {
+                due.addAndGet(-interval);
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.chat.websocket;
+
+import com.example.chat.model.Message;
+import com.example.chat.service.ChatService;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Delivers "new message" notifications to the members of the source room on their personal
+ * {@code /user/queue/notifications} channel. Notifications are collected per user and flushed once per
+ * coalescing window, so a burst of messages turns into one frame per interested user.
+ */
+@Component
+public class NotificationDispatcher {
+    private static final Logger logger = LoggerFactory.getLogger(NotificationDispatcher.class);
+    private static final int PREVIEW_LENGTH = 20;
+
+    @Autowired
+    private RoomMembershipIndex membershipIndex;
+
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Autowired
+    private ClusterPresence clusterPresence;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // username -> roomId -> pending notification; mutated only inside compute()/remove() so a flush never
+    // races with a writer on the same user
+    private final Map<String, Map<Long, Pending>> pending = new ConcurrentHashMap<>();
+    // Followers notified per message, and frames per flush after coalescing
+    private DistributionSummary fanout;
+    private DistributionSummary flushed;
+
+    @PostConstruct
+    public void init() {
+        fanout = DistributionSummary.builder("chat.notifications.fanout").baseUnit("users").register(meterRegistry);
+        flushed = DistributionSummary.builder("chat.notifications.flush").baseUnit("frames").register(meterRegistry);
+    }
+
+    public void enqueue(Message message, String sender) {
+        String preview = message.getMessageText().length() > PREVIEW_LENGTH
+                ? message.getMessageText().substring(0, PREVIEW_LENGTH) + "..."
+                : message.getMessageText();
+        String roomId = String.valueOf(message.getRoomId());
+        int recipients = 0;
+        for (String member : membershipIndex.membersOf(message.getRoomId())) {
+            // Users currently in the room already receive the message itself
+            if (member.equals(sender) || clusterPresence.isPresent(roomId, member)) {
+                continue;
+            }
+            recipients++;
+            pending.compute(member, (user, rooms) -> {
+                Map<Long, Pending> byRoom = rooms != null ? rooms : new HashMap<>();
+                byRoom.merge(message.getRoomId(), new Pending(message.getRoomId(), preview, 1), Pending::plus);
+                return byRoom;
+            });
+        }
+        fanout.record(recipients);
+    }
+
+    @Scheduled(fixedDelayString = "${chat.notifications.coalesce-window-ms:500}")
+    public void flush() {
+        int frames = 0;
+        for (String user : pending.keySet()) {
+            Map<Long, Pending> rooms = pending.remove(user);
+            if (rooms == null) {
+                continue;
+            }
+            try {
+                List<Map<String, Object>> data = new ArrayList<>(rooms.size());
+                for (Pending notification : rooms.values()) {
+                    data.add(Map.of(
+                            "roomId", notification.roomId(),
+                            "roomName", chatService.getRoomNameById(notification.roomId()),
+                            "messageText", notification.preview(),
+                            "count", notification.count()
+                    ));
+                }
+                eventPublisher.publish(RoomEventPublisher.userQueue(user, "notifications"),
+                        new RoomEvent("notifications", data));
+                frames++;
+            } catch (Exception e) {
+                logger.error("Error sending notifications to user {}: {}", user, e.getMessage(), e);
+            }
+        }
+        if (frames > 0) {
+            flushed.record(frames);
+        }
+    }
+
+    private record Pending(Long roomId, String preview, int count) {
+        // The newest preview wins; counts add up
+        Pending plus(Pending newer) {
+            return new Pending(roomId, newer.preview, count + newer.count);
+        }
+    }
+}
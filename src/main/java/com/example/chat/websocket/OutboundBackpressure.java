@@ -0,0 +1,112 @@
+package com.example.chat.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.WebSocketHandler;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.WebSocketHandlerDecorator;
+import org.springframework.web.socket.handler.WebSocketHandlerDecoratorFactory;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Wraps every WebSocket session in an {@link OutboundSessionDecorator} and publishes its queue depth as
+ * {@code chat.ws.session.queue.depth{session}} while it is open. Sessions drain on virtual threads:
+ * a stalled client parks one cheap thread for up to the send time limit instead of a pool worker.
+ */
+@Component
+public class OutboundBackpressure implements WebSocketHandlerDecoratorFactory {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundBackpressure.class);
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.websocket.send-time-limit-ms:10000}")
+    private int sendTimeLimitMs;
+
+    @Value("${chat.websocket.send-buffer-size-limit:524288}")
+    private int bufferSizeLimit;
+
+    @Value("${chat.websocket.overflow-policy:coalesce}")
+    private String overflowPolicy;
+
+    private final Map<String, Gauge> gauges = new ConcurrentHashMap<>();
+    private final ExecutorService senders = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("ws-send-", 0).factory());
+    private OutboundSessionDecorator.OverflowPolicy policy;
+    private OutboundSessionDecorator.Listener listener;
+
+    @PostConstruct
+    public void init() {
+        policy = OutboundSessionDecorator.OverflowPolicy.valueOf(overflowPolicy.toUpperCase(Locale.ROOT));
+        Counter dropped = Counter.builder("chat.ws.outbound.frames").tag("outcome", "dropped").register(meterRegistry);
+        Counter coalesced = Counter.builder("chat.ws.outbound.frames").tag("outcome", "coalesced").register(meterRegistry);
+        Counter disconnects = Counter.builder("chat.ws.outbound.disconnects").register(meterRegistry);
+        listener = new OutboundSessionDecorator.Listener() {
+            @Override
+            public void dropped(int frames) {
+                dropped.increment(frames);
+            }
+
+            @Override
+            public void coalesced() {
+                coalesced.increment();
+            }
+
+            @Override
+            public void disconnected(String reason) {
+                disconnects.increment();
+                logger.warn("Closing slow WebSocket session: {}", reason);
+            }
+        };
+    }
+
+    public int getSendTimeLimitMs() {
+        return sendTimeLimitMs;
+    }
+
+    public int getBufferSizeLimit() {
+        return bufferSizeLimit;
+    }
+
+    @Override
+    public WebSocketHandler decorate(WebSocketHandler handler) {
+        return new WebSocketHandlerDecorator(handler) {
+            @Override
+            public void afterConnectionEstablished(WebSocketSession session) throws Exception {
+                OutboundSessionDecorator decorated = new OutboundSessionDecorator(
+                        session, sendTimeLimitMs, bufferSizeLimit, policy, senders, listener);
+                gauges.put(session.getId(), Gauge.builder("chat.ws.session.queue.depth", decorated, OutboundSessionDecorator::getQueueDepth)
+                        .tag("session", session.getId())
+                        .register(meterRegistry));
+                super.afterConnectionEstablished(decorated);
+            }
+
+            @Override
+            public void afterConnectionClosed(WebSocketSession session, CloseStatus closeStatus) throws Exception {
+                Gauge gauge = gauges.remove(session.getId());
+                if (gauge != null) {
+                    meterRegistry.remove(gauge);
+                }
+                super.afterConnectionClosed(session, closeStatus);
+            }
+        };
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        senders.shutdown();
+    }
+}
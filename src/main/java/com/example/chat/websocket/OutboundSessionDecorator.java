@@ -0,0 +1,270 @@
+package com.example.chat.websocket;
+
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.SessionLimitExceededException;
+import org.springframework.web.socket.handler.WebSocketSessionDecorator;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Gives one WebSocket session its own bounded outbound queue, drained on a separate thread so a slow
+ * client never holds up the broker. When the queue would exceed its byte budget, low-priority frames
+ * (those carrying {@code x-priority:low}) are dropped or coalesced first; a chat message that still does
+ * not fit, or a send stuck for longer than the time limit, closes the session instead of losing data.
+ * State frames (normal priority with an {@code x-coalesce} key, e.g. presence and reaction deltas) are never
+ * dropped either: a newer one replaces the queued frame with its key, and otherwise they count as chat messages.
+ */
+public class OutboundSessionDecorator extends WebSocketSessionDecorator {
+    static final String PRIORITY_HEADER = "x-priority";
+    static final String COALESCE_HEADER = "x-coalesce";
+
+    public enum OverflowPolicy {
+        /** Drop low-priority frames that do not fit; make room for other frames by dropping queued ones. */
+        DROP,
+        /** Like DROP, but a low-priority frame replaces a queued one with the same coalesce key first. */
+        COALESCE,
+        /** Close the session as soon as anything does not fit. */
+        DISCONNECT
+    }
+
+    /** Outcomes reported to {@link OutboundBackpressure} for metrics. */
+    interface Listener {
+        void dropped(int frames);
+
+        void coalesced();
+
+        void disconnected(String reason);
+    }
+
+    private final int sendTimeLimitMs;
+    private final int bufferSizeLimit;
+    private final OverflowPolicy policy;
+    private final Executor executor;
+    private final Listener listener;
+
+    // Guarded by "this"
+    private final Deque<Frame> queue = new ArrayDeque<>();
+    private long bufferedBytes;
+
+    private final AtomicBoolean draining = new AtomicBoolean();
+    private volatile long sendStartTime;
+    private volatile boolean limitExceeded;
+
+    public OutboundSessionDecorator(WebSocketSession session, int sendTimeLimitMs, int bufferSizeLimit,
+                                    OverflowPolicy policy, Executor executor, Listener listener) {
+        super(session);
+        this.sendTimeLimitMs = sendTimeLimitMs;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.policy = policy;
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    public synchronized int getQueueDepth() {
+        return queue.size();
+    }
+
+    public synchronized long getBufferedBytes() {
+        return bufferedBytes;
+    }
+
+    @Override
+    public void sendMessage(WebSocketMessage<?> message) throws IOException {
+        if (limitExceeded) {
+            return;
+        }
+        long started = sendStartTime;
+        if (started != 0 && System.nanoTime() - started > TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs)) {
+            exceeded("Send time limit exceeded for session " + getId());
+        }
+        if (!offer(Frame.of(message))) {
+            exceeded("Outbound buffer limit exceeded for session " + getId());
+        }
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private synchronized boolean offer(Frame frame) {
+        if (bufferedBytes + frame.size <= bufferSizeLimit) {
+            add(frame);
+            return true;
+        }
+        if (policy == OverflowPolicy.DISCONNECT) {
+            return false;
+        }
+        if (frame.lowPriority) {
+            if (policy == OverflowPolicy.COALESCE && replaceQueued(frame)) {
+                listener.coalesced();
+            } else {
+                listener.dropped(1);
+            }
+            return true;
+        }
+        if (frame.coalesceKey != null && replaceQueued(frame)) {
+            listener.coalesced();
+            return true;
+        }
+        // A chat message or state frame: shed queued low-priority frames, oldest first, until it fits
+        int shed = 0;
+        for (Iterator<Frame> it = queue.iterator(); it.hasNext() && bufferedBytes + frame.size > bufferSizeLimit; ) {
+            Frame queued = it.next();
+            if (queued.lowPriority) {
+                it.remove();
+                bufferedBytes -= queued.size;
+                shed++;
+            }
+        }
+        if (shed > 0) {
+            listener.dropped(shed);
+        }
+        if (bufferedBytes + frame.size > bufferSizeLimit) {
+            return false;
+        }
+        add(frame);
+        return true;
+    }
+
+    // State frames always coalesce: the newer frame carries everything the queued one did
+    private void add(Frame frame) {
+        if ((policy == OverflowPolicy.COALESCE || !frame.lowPriority) && replaceQueued(frame)) {
+            listener.coalesced();
+            return;
+        }
+        queue.add(frame);
+        bufferedBytes += frame.size;
+    }
+
+    // A newer snapshot for the same destination makes the queued one pointless
+    private boolean replaceQueued(Frame frame) {
+        if (frame.coalesceKey == null) {
+            return false;
+        }
+        for (Iterator<Frame> it = queue.iterator(); it.hasNext(); ) {
+            Frame queued = it.next();
+            if (frame.coalesceKey.equals(queued.coalesceKey)) {
+                it.remove();
+                bufferedBytes -= queued.size;
+                queue.add(frame);
+                bufferedBytes += frame.size;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private synchronized Frame poll() {
+        Frame frame = queue.poll();
+        if (frame != null) {
+            bufferedBytes -= frame.size;
+        }
+        return frame;
+    }
+
+    private void drain() {
+        try {
+            Frame frame;
+            while (!limitExceeded && (frame = poll()) != null) {
+                sendStartTime = System.nanoTime();
+                try {
+                    getDelegate().sendMessage(frame.message);
+                } finally {
+                    sendStartTime = 0;
+                }
+            }
+        } catch (Exception e) {
+            exceededQuietly("Send failed: " + e.getMessage());
+        } finally {
+            draining.set(false);
+        }
+        // A frame may have been queued after the last poll but before the flag was cleared
+        synchronized (this) {
+            if (queue.isEmpty() || limitExceeded) {
+                return;
+            }
+        }
+        if (draining.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    private void exceeded(String reason) {
+        exceededQuietly(reason);
+        throw new SessionLimitExceededException(reason, CloseStatus.SESSION_NOT_RELIABLE);
+    }
+
+    private void exceededQuietly(String reason) {
+        if (limitExceeded) {
+            return;
+        }
+        limitExceeded = true;
+        synchronized (this) {
+            queue.clear();
+            bufferedBytes = 0;
+        }
+        listener.disconnected(reason);
+        try {
+            getDelegate().close(CloseStatus.SESSION_NOT_RELIABLE);
+        } catch (Exception ignored) {
+            // The session is going away either way
+        }
+    }
+
+    private record Frame(WebSocketMessage<?> message, int size, boolean lowPriority, String coalesceKey) {
+
+        static Frame of(WebSocketMessage<?> message) {
+            String payload = switch (message) {
+                case TextMessage text -> text.getPayload();
+                case BinaryMessage binary -> headerSection(binary.getPayload());
+                default -> "";
+            };
+            if (!payload.startsWith("MESSAGE\n")) {
+                return new Frame(message, message.getPayloadLength(), false, null);
+            }
+            // Walk the header lines only; the body is never looked at
+            boolean low = false;
+            String key = null;
+            String destination = null;
+            int start = payload.indexOf('\n') + 1;
+            int end;
+            while ((end = payload.indexOf('\n', start)) > start) {
+                if (payload.startsWith(PRIORITY_HEADER + ":low", start)) {
+                    low = true;
+                } else if (payload.startsWith(COALESCE_HEADER + ":", start)) {
+                    key = payload.substring(start + COALESCE_HEADER.length() + 1, end);
+                } else if (payload.startsWith("destination:", start)) {
+                    destination = payload.substring(start + "destination:".length(), end);
+                }
+                start = end + 1;
+            }
+            String coalesceKey = key != null ? destination + "|" + key : null;
+            return new Frame(message, message.getPayloadLength(), low, coalesceKey);
+        }
+
+        // Binary frames carry the same text headers; only the bytes up to the blank line are decoded
+        private static String headerSection(ByteBuffer frame) {
+            ByteBuffer bytes = frame.duplicate();
+            int start = bytes.position();
+            for (int i = start; i + 1 < bytes.limit(); i++) {
+                if (bytes.get(i) == '\n' && bytes.get(i + 1) == '\n') {
+                    byte[] headers = new byte[i + 1 - start];
+                    bytes.get(headers);
+                    return new String(headers, StandardCharsets.UTF_8);
+                }
+            }
+            return "";
+        }
+    }
+}
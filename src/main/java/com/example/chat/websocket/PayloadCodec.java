@@ -0,0 +1,92 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Reads inbound frames in any {@link PayloadFormat} and re-encodes outbound JSON events for binary
+ * sessions. Events are serialized to JSON once and the broker hands every subscriber the same payload
+ * array, so binary encodings are memoized by that array's identity: a room broadcast is transcoded once
+ * per format, not once per subscriber. The memo holds its keys weakly and forgets an event as soon as
+ * the broker is done with it.
+ */
+@Component
+public class PayloadCodec {
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final Map<PayloadFormat, ObjectMapper> mappers = new EnumMap<>(PayloadFormat.class);
+    private final Map<PayloadFormat, Cache<byte[], byte[]>> encoded = new EnumMap<>(PayloadFormat.class);
+    private Counter transcodes;
+    private Counter reuses;
+
+    @PostConstruct
+    public void init() {
+        mappers.put(PayloadFormat.JSON, objectMapper);
+        // Same modules and settings as the JSON mapper, different wire format
+        mappers.put(PayloadFormat.CBOR, objectMapper.copyWith(new CBORFactory()));
+        mappers.put(PayloadFormat.SMILE, objectMapper.copyWith(new SmileFactory()));
+        for (PayloadFormat format : PayloadFormat.values()) {
+            if (format.isBinary()) {
+                encoded.put(format, Caffeine.newBuilder().weakKeys().maximumSize(4096).build());
+            }
+        }
+        transcodes = Counter.builder("chat.ws.payload.transcodes").tag("outcome", "encoded").register(meterRegistry);
+        reuses = Counter.builder("chat.ws.payload.transcodes").tag("outcome", "reused").register(meterRegistry);
+    }
+
+    public <T> T read(byte[] payload, PayloadFormat format, Class<T> type) throws IOException {
+        return mappers.get(format).readValue(payload, type);
+    }
+
+    public JsonFactory factory(PayloadFormat format) {
+        return mappers.get(format).getFactory();
+    }
+
+    /** The JSON document {@code json} in {@code format}; the same array yields the same result. */
+    public byte[] transcode(byte[] json, PayloadFormat format) {
+        Cache<byte[], byte[]> memo = encoded.get(format);
+        byte[] cached = memo.getIfPresent(json);
+        if (cached != null) {
+            reuses.increment();
+            return cached;
+        }
+        return memo.get(json, source -> {
+            transcodes.increment();
+            return copy(source, objectMapper.getFactory(), mappers.get(format).getFactory());
+        });
+    }
+
+    // Token-by-token copy: no tree and no POJOs in between
+    private static byte[] copy(byte[] source, JsonFactory from, JsonFactory to) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(source.length);
+        try (JsonParser parser = from.createParser(source); JsonGenerator generator = to.createGenerator(out)) {
+            parser.nextToken();
+            generator.copyCurrentStructure(parser);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot transcode payload", e);
+        }
+        return out.toByteArray();
+    }
+}
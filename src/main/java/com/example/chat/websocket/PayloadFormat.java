@@ -0,0 +1,52 @@
+package com.example.chat.websocket;
+
+import org.springframework.util.MimeType;
+import org.springframework.util.MimeTypeUtils;
+
+/**
+ * Body encodings a STOMP session may use. JSON is the default and the only one SockJS sessions get; the
+ * binary formats carry the same documents in fewer bytes and are cheaper to parse.
+ */
+public enum PayloadFormat {
+    JSON(MimeTypeUtils.APPLICATION_JSON),
+    CBOR(MimeType.valueOf("application/cbor")),
+    SMILE(MimeType.valueOf("application/x-jackson-smile"));
+
+    private final MimeType mimeType;
+
+    PayloadFormat(MimeType mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public MimeType mimeType() {
+        return mimeType;
+    }
+
+    public boolean isBinary() {
+        return this != JSON;
+    }
+
+    /** The format of an inbound frame by its {@code content-type}; anything unknown is read as JSON. */
+    public static PayloadFormat of(MimeType contentType) {
+        if (contentType != null) {
+            for (PayloadFormat format : values()) {
+                if (format.mimeType.equalsTypeAndSubtype(contentType)) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+
+    /** The format a client asks for in its CONNECT frame, e.g. {@code payload-format: cbor}. */
+    public static PayloadFormat named(String name) {
+        if (name != null) {
+            for (PayloadFormat format : values()) {
+                if (format.name().equalsIgnoreCase(name.trim())) {
+                    return format;
+                }
+            }
+        }
+        return JSON;
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.chat.websocket;
+
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Who is in which room, keyed by WebSocket session. A user counts as present in a room while at least one
+ * of their sessions has joined it, so repeated joins and several tabs do not produce duplicates. Every
+ * operation is O(1) per room; updates to one room never block another.
+ */
+@Component
+public class PresenceRegistry {
+    // sessionId -> roomId -> username the session joined with
+    private final Map<String, Map<String, String>> sessions = new ConcurrentHashMap<>();
+    // roomId -> username -> number of that user's sessions in the room; only mutated inside rooms.compute()
+    private final Map<String, Map<String, Integer>> rooms = new ConcurrentHashMap<>();
+
+    /** Returns {@code true} if the user was not in the room before, i.e. a join delta should go out. */
+    public boolean join(String sessionId, String roomId, String username) {
+        Map<String, String> joined = sessions.computeIfAbsent(sessionId, id -> new ConcurrentHashMap<>());
+        if (joined.putIfAbsent(roomId, username) != null) {
+            return false;
+        }
+        boolean[] first = new boolean[1];
+        rooms.compute(roomId, (id, users) -> {
+            Map<String, Integer> present = users != null ? users : new ConcurrentHashMap<>();
+            first[0] = present.merge(username, 1, Integer::sum) == 1;
+            return present;
+        });
+        return first[0];
+    }
+
+    /** Returns the username that is no longer present in the room, or {@code null} if nothing changed. */
+    public String leave(String sessionId, String roomId) {
+        Map<String, String> joined = sessions.get(sessionId);
+        String username = joined != null ? joined.remove(roomId) : null;
+        return username != null && release(roomId, username) ? username : null;
+    }
+
+    /** Drops every room the session was in; returns the (roomId, username) pairs that became absent. */
+    public List<Departure> disconnect(String sessionId) {
+        Map<String, String> joined = sessions.remove(sessionId);
+        List<Departure> departures = new ArrayList<>();
+        if (joined != null) {
+            joined.forEach((roomId, username) -> {
+                if (release(roomId, username)) {
+                    departures.add(new Departure(roomId, username));
+                }
+            });
+        }
+        return departures;
+    }
+
+    private boolean release(String roomId, String username) {
+        boolean[] gone = new boolean[1];
+        rooms.computeIfPresent(roomId, (id, present) -> {
+            gone[0] = present.computeIfPresent(username, (name, count) -> count > 1 ? count - 1 : null) == null;
+            return present.isEmpty() ? null : present;
+        });
+        return gone[0];
+    }
+
+    public Set<String> usersIn(String roomId) {
+        Map<String, Integer> present = rooms.get(roomId);
+        return present != null ? Set.copyOf(present.keySet()) : Set.of();
+    }
+
+    public boolean isPresent(String roomId, String username) {
+        Map<String, Integer> present = rooms.get(roomId);
+        return present != null && present.containsKey(username);
+    }
+
+    /** Copy of roomId -> present usernames, as shared with the other cluster nodes. */
+    public Map<String, Set<String>> snapshot() {
+        Map<String, Set<String>> copy = new HashMap<>();
+        rooms.forEach((roomId, users) -> copy.put(roomId, Set.copyOf(users.keySet())));
+        return copy;
+    }
+
+    public int sessionCount() {
+        return sessions.size();
+    }
+
+    public int roomCount() {
+        return rooms.size();
+    }
+
+    public record Departure(String roomId, String username) {
+    }
+}
@@ -0,0 +1,136 @@
+package com.example.chat.websocket;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.ClusterEvent;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessagingTemplate;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.stereotype.Component;
+import org.springframework.util.MimeTypeUtils;
+import org.springframework.util.StringUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Sends outbound events to STOMP destinations. Each event is serialized to JSON exactly once; the
+ * resulting byte array is shared by every destination and by every subscriber the broker copies it to,
+ * so the cost of an event does not depend on how many rooms or sessions it reaches. In a cluster the same
+ * bytes are forwarded once to the other nodes, which deliver them to their own subscribers.
+ */
+@Component
+public class RoomEventPublisher {
+
+    @Autowired
+    private SimpMessagingTemplate messagingTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    public void publish(String destination, Object event) {
+        publish(List.of(destination), event);
+    }
+
+    public void publish(Collection<String> destinations, Object event) {
+        if (!destinations.isEmpty()) {
+            send(destinations, event, Map.of(), true);
+        }
+    }
+
+    /**
+     * For deltas a client cannot rebuild on its own, such as presence and reaction counts. Never dropped
+     * for a slow session; a queued frame is replaced by a newer one with the same destination and
+     * {@code coalesceKey}, which must therefore identify everything the event changes.
+     */
+    public void publishState(String destination, Object event, String coalesceKey) {
+        send(List.of(destination), event, Map.of(OutboundSessionDecorator.COALESCE_HEADER, coalesceKey), true);
+    }
+
+    /** {@link #publishState} to subscribers connected to this node only. */
+    public void publishStateLocal(String destination, Object event, String coalesceKey) {
+        send(List.of(destination), event, Map.of(OutboundSessionDecorator.COALESCE_HEADER, coalesceKey), false);
+    }
+
+    /**
+     * For transient state such as typing, sent to subscribers connected to this node only: slow sessions
+     * drop these frames before anything else. A queued frame is replaced by a newer one for the same
+     * destination and {@code coalesceKey} (may be {@code null}).
+     */
+    public void publishLowPriorityLocal(String destination, Object event, String coalesceKey) {
+        send(List.of(destination), event, lowPriorityHeaders(coalesceKey), false);
+    }
+
+    /** Delivers an event another node already serialized; it is not forwarded again. */
+    public void deliverRemote(Collection<String> destinations, byte[] payload, Map<String, String> headers) {
+        Message<byte[]> message = message(payload, null, headers != null ? headers : Map.of());
+        for (String destination : destinations) {
+            messagingTemplate.send(destination, message);
+        }
+    }
+
+    /**
+     * Sends to a {@code /user/...} destination but only to the given session of that user. For sessions
+     * without a principal the session id itself may be used as the user name.
+     */
+    public void publishToSession(String sessionId, String userDestination, Object event) {
+        messagingTemplate.send(userDestination, encode(event, sessionId, Map.of()));
+    }
+
+    /** Builds an immutable, pre-serialized message; the template only copies its headers per send. */
+    public Message<byte[]> encode(Object event) {
+        return encode(event, null, Map.of());
+    }
+
+    private void send(Collection<String> destinations, Object event, Map<String, String> nativeHeaders, boolean forward) {
+        Message<byte[]> message = encode(event, null, nativeHeaders);
+        for (String destination : destinations) {
+            messagingTemplate.send(destination, message);
+        }
+        if (forward && clusterBus.isClustered()) {
+            clusterBus.publish(ClusterEvent.broadcast(clusterBus.nodeId(), List.copyOf(destinations), message.getPayload(), nativeHeaders));
+        }
+    }
+
+    private Message<byte[]> encode(Object event, String sessionId, Map<String, String> nativeHeaders) {
+        try {
+            return message(objectMapper.writeValueAsBytes(event), sessionId, nativeHeaders);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Cannot serialize event " + event, e);
+        }
+    }
+
+    private static Message<byte[]> message(byte[] payload, String sessionId, Map<String, String> nativeHeaders) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create();
+        accessor.setContentType(MimeTypeUtils.APPLICATION_JSON);
+        accessor.setSessionId(sessionId);
+        nativeHeaders.forEach(accessor::setNativeHeader);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+
+    private static Map<String, String> lowPriorityHeaders(String coalesceKey) {
+        return coalesceKey != null
+                ? Map.of(OutboundSessionDecorator.PRIORITY_HEADER, "low", OutboundSessionDecorator.COALESCE_HEADER, coalesceKey)
+                : Map.of(OutboundSessionDecorator.PRIORITY_HEADER, "low");
+    }
+
+    public static String roomTopic(Object roomId) {
+        return "/topic/room/" + roomId;
+    }
+
+    // Same encoding SimpMessagingTemplate.convertAndSendToUser applies to user names
+    public static String userQueue(String username, String queue) {
+        return "/user/" + StringUtils.replace(username, "/", "%2F") + "/queue/" + queue;
+    }
+
+    /** Envelope shared by all room events: {@code {"type": ..., "data": ...}}. */
+    public record RoomEvent(String type, Object data) {
+    }
+}
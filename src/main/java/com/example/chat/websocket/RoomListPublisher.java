@@ -0,0 +1,44 @@
+package com.example.chat.websocket;
+
+import com.example.chat.model.ChatRoom;
+import com.example.chat.service.RoomActivityTracker;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Pushes room list changes to {@code /topic/rooms} so clients never poll for them: new rooms as a
+ * {@code "rooms"} event and, at most once per interval, the newest sequence number of every room that had
+ * traffic as one {@code "activity"} event. Clients compute their unread counts from {@code lastSeq} and the
+ * read positions they got with the room list. The topic reaches every client, so it never carries message
+ * text; previews come with the room list page, which clients fetch for the rooms they show.
+ */
+@Component
+public class RoomListPublisher {
+    public static final String TOPIC = "/topic/rooms";
+
+    @Autowired
+    private RoomActivityTracker roomActivity;
+
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Scheduled(fixedDelayString = "${chat.rooms.push-interval-ms:1000}")
+    public void flush() {
+        List<ChatRoom> created = roomActivity.drainCreated();
+        if (!created.isEmpty()) {
+            eventPublisher.publish(TOPIC, new RoomEvent("rooms", created));
+        }
+        List<RoomActivityTracker.Activity> changed = roomActivity.drainChanged();
+        if (!changed.isEmpty()) {
+            List<RoomSeq> seqs = changed.stream().map(activity -> new RoomSeq(activity.roomId(), activity.lastSeq())).toList();
+            eventPublisher.publish(TOPIC, new RoomEvent("activity", seqs));
+        }
+    }
+
+    public record RoomSeq(Long roomId, long lastSeq) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.chat.websocket;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Which users follow which rooms. A user follows every room they have joined, and keeps following it after
+ * leaving, so they can be notified about activity there. A follow lapses once the user has not joined the
+ * room for {@code follow-ttl-hours}, and rooms without followers are dropped.
+ */
+@Component
+public class RoomMembershipIndex {
+    private static final Logger logger = LoggerFactory.getLogger(RoomMembershipIndex.class);
+
+    @Value("${chat.notifications.follow-ttl-hours:720}")
+    private long followTtlHours;
+
+    // roomId -> username -> time of the last join, in epoch millis; rooms are added and removed only inside
+    // compute calls so a prune never drops a follow that is being recorded
+    private final Map<Long, Map<String, Long>> membersByRoom = new ConcurrentHashMap<>();
+
+    public void follow(String username, Long roomId) {
+        long now = System.currentTimeMillis();
+        membersByRoom.compute(roomId, (id, members) -> {
+            Map<String, Long> followers = members != null ? members : new ConcurrentHashMap<>();
+            followers.put(username, now);
+            return followers;
+        });
+    }
+
+    public Set<String> membersOf(Long roomId) {
+        Map<String, Long> members = membersByRoom.get(roomId);
+        return members != null ? members.keySet() : Set.of();
+    }
+
+    @Scheduled(fixedDelayString = "${chat.notifications.follow-prune-interval-ms:3600000}")
+    public void prune() {
+        long cutoff = System.currentTimeMillis() - Duration.ofHours(followTtlHours).toMillis();
+        AtomicInteger lapsed = new AtomicInteger();
+        for (Long roomId : membersByRoom.keySet()) {
+            membersByRoom.computeIfPresent(roomId, (id, members) -> {
+                int before = members.size();
+                members.values().removeIf(lastJoin -> lastJoin < cutoff);
+                lapsed.addAndGet(before - members.size());
+                return members.isEmpty() ? null : members;
+            });
+        }
+        if (lapsed.get() > 0) {
+            logger.debug("Dropped {} lapsed room follows", lapsed.get());
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.chat.websocket;
+
+import com.example.chat.exception.CustomException;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking per-room work (saving and broadcasting chat messages) off the STOMP inbound threads when
+ * virtual threads are enabled. Tasks for one room run one at a time in submission order, so more threads
+ * never reorder a room's messages; different rooms proceed in parallel. Database calls additionally wait
+ * for one of {@code maximum-pool-size} permits instead of piling up on Hikari's connection timeout.
+ * With virtual threads disabled tasks run inline on the caller, one room at a time under a per-room lock,
+ * so room sequence numbers reach subscribers in order in both modes. A room's queue holds at most
+ * {@code room-queue-capacity} tasks, beyond which submissions get 503, and queues and locks only exist
+ * while a room has work, so client-supplied room ids cannot grow them.
+ */
+@Component
+public class RoomSerialExecutor {
+    private static final Logger logger = LoggerFactory.getLogger(RoomSerialExecutor.class);
+
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean enabled;
+
+    @Value("${spring.datasource.hikari.maximum-pool-size:10}")
+    private int databasePermits;
+
+    @Value("${chat.websocket.room-queue-capacity:1000}")
+    private int queueCapacity;
+
+    private final Map<Long, RoomQueue> queues = new ConcurrentHashMap<>();
+    private final Map<Long, RoomLock> locks = new ConcurrentHashMap<>();
+    private ExecutorService executor;
+    private Semaphore databaseSlots;
+
+    @PostConstruct
+    public void init() {
+        if (enabled) {
+            executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("room-", 0).factory());
+            databaseSlots = new Semaphore(databasePermits, true);
+        }
+    }
+
+    public void execute(String roomId, Runnable task) {
+        Long room = parseRoomId(roomId);
+        if (!enabled) {
+            RoomLock lock = locks.compute(room, (id, held) -> (held != null ? held : new RoomLock()).enter());
+            try {
+                synchronized (lock) {
+                    task.run();
+                }
+            } finally {
+                locks.computeIfPresent(room, (id, held) -> held.leave() ? null : held);
+            }
+            return;
+        }
+        // Under the map's lock for this room, so a queue that is emptying either takes the task or is gone
+        queues.compute(room, (id, queue) -> {
+            RoomQueue target = queue != null ? queue : new RoomQueue(id);
+            if (!target.tasks.offer(task)) {
+                logger.warn("Task queue for room {} is full, rejecting", id);
+                throw new CustomException("Room is busy, try again shortly", 503);
+            }
+            if (queue == null) {
+                executor.execute(target);
+            }
+            return target;
+        });
+    }
+
+    /** Runs {@code task} in turn with the room's other work, e.g. edits, and waits for its result. */
+    public <T> T executeAndWait(String roomId, Callable<T> task) throws Exception {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(roomId, () -> {
+            try {
+                result.complete(task.call());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        });
+        try {
+            return result.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception cause ? cause : e;
+        }
+    }
+
+    public <T> T withDatabasePermit(Supplier<T> call) {
+        if (!enabled) {
+            return call.get();
+        }
+        databaseSlots.acquireUninterruptibly();
+        try {
+            return call.get();
+        } finally {
+            databaseSlots.release();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static Long parseRoomId(String roomId) {
+        try {
+            long id = Long.parseLong(roomId);
+            if (id > 0) {
+                return id;
+            }
+        } catch (NumberFormatException e) {
+            // reported below
+        }
+        throw new CustomException("Invalid room id", 400);
+    }
+
+    /** Runs from its first task until it finds itself empty, then leaves the map. */
+    private final class RoomQueue implements Runnable {
+        private final Long roomId;
+        private final BlockingQueue<Runnable> tasks = new LinkedBlockingQueue<>(queueCapacity);
+
+        RoomQueue(Long roomId) {
+            this.roomId = roomId;
+        }
+
+        @Override
+        public void run() {
+            boolean[] removed = new boolean[1];
+            while (!removed[0]) {
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        logger.error("Room task failed: {}", e.getMessage(), e);
+                    }
+                }
+                // A task may have been added after the last poll; then keep going
+                queues.computeIfPresent(roomId, (id, queue) -> {
+                    removed[0] = queue == this && tasks.isEmpty();
+                    return removed[0] ? null : queue;
+                });
+            }
+        }
+    }
+
+    /** Monitor for one room in inline mode, counting the threads that use it. Changed only inside map compute calls. */
+    private static final class RoomLock {
+        private int users;
+
+        RoomLock enter() {
+            users++;
+            return this;
+        }
+
+        boolean leave() {
+            return --users == 0;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.example.chat.websocket;
+
+import java.security.Principal;
+
+// Identity attached to a STOMP session on CONNECT; its name is what /user/ destinations resolve against
+public record StompPrincipal(String name, Long userId) implements Principal {
+    @Override
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,39 @@
+package com.example.chat.websocket;
+
+import com.example.chat.service.TokenService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageChannel;
+import org.springframework.messaging.MessageDeliveryException;
+import org.springframework.messaging.simp.stomp.StompCommand;
+import org.springframework.messaging.simp.stomp.StompHeaderAccessor;
+import org.springframework.messaging.support.ChannelInterceptor;
+import org.springframework.messaging.support.MessageHeaderAccessor;
+import org.springframework.stereotype.Component;
+
+/**
+ * Authenticates the STOMP CONNECT frame by its {@code Authorization: Bearer <token>} header and binds the
+ * token's user to the session as its principal, so the server can address a user through
+ * {@code /user/queue/...} destinations. A CONNECT without a valid token is answered with an ERROR frame.
+ */
+@Component
+public class StompPrincipalInterceptor implements ChannelInterceptor {
+
+    @Autowired
+    private TokenService tokenService;
+
+    @Override
+    public Message<?> preSend(Message<?> message, MessageChannel channel) {
+        StompHeaderAccessor accessor = MessageHeaderAccessor.getAccessor(message, StompHeaderAccessor.class);
+        if (accessor != null && StompCommand.CONNECT.equals(accessor.getCommand())) {
+            String token = TokenService.bearer(accessor.getFirstNativeHeader(HttpHeaders.AUTHORIZATION));
+            TokenService.Claims claims = tokenService.verify(token);
+            if (claims == null) {
+                throw new MessageDeliveryException("Invalid or expired session");
+            }
+            accessor.setUser(new StompPrincipal(claims.username(), claims.userId()));
+        }
+        return message;
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.chat.websocket;
+
+import com.example.chat.cluster.ClusterBus;
+import com.example.chat.cluster.ClusterEvent;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects typing events per room and publishes at most one "typing users" snapshot per room per flush
+ * interval. Repeat events from a user inside {@code repeat-window-ms} are dropped outright; a typist
+ * disappears from the snapshot {@code ttl-ms} after their last accepted event. In a cluster, accepted events
+ * and stops are shared with the other nodes, so every node tracks the room's typists wherever they are
+ * connected and publishes the same merged snapshot to its own subscribers only.
+ */
+@Component
+public class TypingAggregator {
+
+    @Autowired
+    private RoomEventPublisher eventPublisher;
+
+    @Autowired
+    private ClusterBus clusterBus;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${chat.typing.ttl-ms:3000}")
+    private long ttlMs;
+
+    @Value("${chat.typing.repeat-window-ms:1000}")
+    private long repeatWindowMs;
+
+    // roomId -> username -> nanoTime of the last accepted typing event; inner maps are only touched
+    // inside compute() on the outer map, which serializes access per room
+    private final Map<String, Map<String, Long>> typists = new ConcurrentHashMap<>();
+    private final Set<String> dirtyRooms = ConcurrentHashMap.newKeySet();
+
+    private Counter received;
+    private Counter dropped;
+    private Counter coalesced;
+    private Counter snapshots;
+
+    @PostConstruct
+    public void init() {
+        received = Counter.builder("chat.typing.events").tag("outcome", "received").register(meterRegistry);
+        dropped = Counter.builder("chat.typing.events").tag("outcome", "dropped").register(meterRegistry);
+        coalesced = Counter.builder("chat.typing.events").tag("outcome", "coalesced").register(meterRegistry);
+        snapshots = Counter.builder("chat.typing.snapshots").register(meterRegistry);
+        clusterBus.subscribe(this::onEvent);
+    }
+
+    public void typing(String roomId, String username) {
+        received.increment();
+        int outcome = record(roomId, username);
+        if (outcome == 0) {
+            dropped.increment();
+            return;
+        }
+        if (outcome == 1) {
+            coalesced.increment();
+        }
+        if (clusterBus.isClustered()) {
+            clusterBus.publish(ClusterEvent.typing(clusterBus.nodeId(), roomId, username, true));
+        }
+    }
+
+    /** Removes a user right away, e.g. because they just sent their message. */
+    public void stopped(String roomId, String username) {
+        if (remove(roomId, username) && clusterBus.isClustered()) {
+            clusterBus.publish(ClusterEvent.typing(clusterBus.nodeId(), roomId, username, false));
+        }
+    }
+
+    private void onEvent(ClusterEvent event) {
+        if (event.kind() != ClusterEvent.Kind.TYPING) {
+            return;
+        }
+        if (event.present()) {
+            record(event.roomId(), event.username());
+        } else {
+            remove(event.roomId(), event.username());
+        }
+    }
+
+    // 0 = dropped as a repeat, 1 = refreshed an existing typist or coalesced into a pending snapshot, 2 = new
+    private int record(String roomId, String username) {
+        long now = System.nanoTime();
+        long repeatWindow = TimeUnit.MILLISECONDS.toNanos(repeatWindowMs);
+        long ttl = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        int[] outcome = new int[1];
+        typists.compute(roomId, (id, room) -> {
+            Map<String, Long> users = room != null ? room : new HashMap<>();
+            Long last = users.get(username);
+            if (last == null || now - last >= repeatWindow) {
+                outcome[0] = last == null || now - last >= ttl ? 2 : 1;
+                users.put(username, now);
+            }
+            return users;
+        });
+        if (outcome[0] == 2 && !dirtyRooms.add(roomId)) {
+            return 1;
+        }
+        return outcome[0];
+    }
+
+    private boolean remove(String roomId, String username) {
+        boolean[] removed = new boolean[1];
+        typists.computeIfPresent(roomId, (id, users) -> {
+            removed[0] = users.remove(username) != null;
+            return users;
+        });
+        if (removed[0]) {
+            dirtyRooms.add(roomId);
+        }
+        return removed[0];
+    }
+
+    @Scheduled(fixedDelayString = "${chat.typing.flush-interval-ms:1000}")
+    public void flush() {
+        long now = System.nanoTime();
+        long ttl = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        for (String roomId : typists.keySet()) {
+            typists.computeIfPresent(roomId, (id, users) -> {
+                if (users.values().removeIf(last -> now - last >= ttl)) {
+                    dirtyRooms.add(roomId);
+                }
+                return users.isEmpty() ? null : users;
+            });
+        }
+        for (String roomId : dirtyRooms) {
+            dirtyRooms.remove(roomId);
+            List<String> usernames = snapshot(roomId);
+            // Every node holds the merged typists, so each one tells only its own subscribers
+            eventPublisher.publishLowPriorityLocal(RoomEventPublisher.roomTopic(roomId),
+                    new RoomEvent("typing", Map.of("usernames", usernames)), "typing");
+            snapshots.increment();
+        }
+    }
+
+    private List<String> snapshot(String roomId) {
+        List<String> usernames = new ArrayList<>();
+        typists.computeIfPresent(roomId, (id, users) -> {
+            usernames.addAll(users.keySet());
+            return users;
+        });
+        return usernames;
+    }
+}
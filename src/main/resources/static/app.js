@@ -1,8 +1,18 @@
-// Store logged-in user, current room, and WebSocket connection
+// Store logged-in user (with its session token), current room, and WebSocket connection
 let currentUser = null;
 let currentRoomId = null;
 let ws = null;
 let typingTimeout = null;
+let roomMembers = new Set();
+let lastTypingSentAt = 0;
+let lastSeq = 0;
+let replaying = false;
+let pendingLive = [];
+let reconnectTimer = null;
+let reconnectDelay = 1000;
+// Room list state: roomId -> { id, name, lastSeq, lastReadSeq }
+const rooms = new Map();
+let readTimer = null;
 
 // DOM elements
 const loginSection = document.getElementById('login-section');
@@ -34,10 +44,7 @@ registerForm.addEventListener('submit', async (e) => {
             body: JSON.stringify({ username, email, password })
         });
         if (!response.ok) throw new Error('Registration failed');
-        currentUser = await response.json();
-        loginSection.classList.add('hidden');
-        chatSection.classList.remove('hidden');
-        loadRooms();
+        startSession(await response.json());
     } catch (error) {
         registerError.classList.remove('hidden');
         registerError.textContent = error.message;
@@ -45,6 +52,25 @@ registerForm.addEventListener('submit', async (e) => {
     }
 });
 
+// Tell the user early when the name they typed is taken
+let availabilityTimer = null;
+document.getElementById('register-username').addEventListener('input', (e) => {
+    clearTimeout(availabilityTimer);
+    const username = e.target.value.trim();
+    if (!username) return;
+    availabilityTimer = setTimeout(async () => {
+        try {
+            const response = await fetch(`http://localhost:8080/api/auth/available?username=${encodeURIComponent(username)}`);
+            if (!response.ok) return;
+            const result = await response.json();
+            registerError.classList.toggle('hidden', result.available);
+            registerError.textContent = result.available ? '' : 'Username is already taken';
+        } catch (error) {
+            console.error('Availability check error:', error);
+        }
+    }, 300);
+});
+
 // Handle login
 loginForm.addEventListener('submit', async (e) => {
     e.preventDefault();
@@ -57,10 +83,7 @@ loginForm.addEventListener('submit', async (e) => {
             body: JSON.stringify({ username, password })
         });
         if (!response.ok) throw new Error('Invalid credentials');
-        currentUser = await response.json();
-        loginSection.classList.add('hidden');
-        chatSection.classList.remove('hidden');
-        loadRooms();
+        startSession(await response.json());
     } catch (error) {
         loginError.classList.remove('hidden');
         loginError.textContent = error.message;
@@ -68,25 +91,106 @@ loginForm.addEventListener('submit', async (e) => {
     }
 });
 
-// Load chat rooms
-async function loadRooms() {
+// Keeps the session token for this tab, so a reload or reconnect never re-sends the password
+function startSession(session) {
+    currentUser = session;
+    sessionStorage.setItem('chatToken', session.token);
+    loginSection.classList.add('hidden');
+    chatSection.classList.remove('hidden');
+    loadRooms();
+}
+
+function authHeaders(headers = {}) {
+    return currentUser ? { ...headers, Authorization: `Bearer ${currentUser.token}` } : headers;
+}
+
+// Resume a stored session; the server answers with a renewed token
+(async function resumeSession() {
+    const token = sessionStorage.getItem('chatToken');
+    if (!token) return;
     try {
-        const response = await fetch('http://localhost:8080/api/rooms');
-        if (!response.ok) throw new Error('Failed to fetch rooms');
-        const rooms = await response.json();
-        roomSelect.innerHTML = '<option value="">Select a room</option>';
-        rooms.forEach(room => {
-            const option = document.createElement('option');
-            option.value = room.id;
-            option.textContent = room.name;
-            roomSelect.appendChild(option);
+        const response = await fetch('http://localhost:8080/api/auth/session', {
+            headers: { Authorization: `Bearer ${token}` }
         });
+        if (!response.ok) throw new Error('Session expired');
+        startSession(await response.json());
+    } catch (error) {
+        sessionStorage.removeItem('chatToken');
+        console.log('No session to resume:', error.message);
+    }
+})();
+
+// Load the room list page by page, with each room's unread count
+async function loadRooms() {
+    try {
+        rooms.clear();
+        let after = null;
+        do {
+            const query = after != null ? `?after=${after}` : '';
+            const response = await fetch(`http://localhost:8080/api/rooms/summaries${query}`, { headers: authHeaders() });
+            if (!response.ok) throw new Error('Failed to fetch rooms');
+            const page = await response.json();
+            page.rooms.forEach(room => rooms.set(String(room.id), room));
+            after = page.nextCursor;
+        } while (after != null);
+        renderRooms();
     } catch (error) {
         console.error('Error loading rooms:', error);
         alert('Failed to load rooms');
     }
 }
 
+function renderRooms() {
+    roomSelect.innerHTML = '<option value="">Select a room</option>';
+    rooms.forEach(room => {
+        const option = document.createElement('option');
+        option.value = room.id;
+        option.textContent = roomLabel(room);
+        option.selected = String(room.id) === String(currentRoomId);
+        roomSelect.appendChild(option);
+    });
+}
+
+function roomLabel(room) {
+    const unread = room.lastReadSeq != null && String(room.id) !== String(currentRoomId)
+        ? Math.max(0, room.lastSeq - room.lastReadSeq) : 0;
+    return unread > 0 ? `${room.name} (${unread})` : room.name;
+}
+
+// Room list pushes: new rooms, and the newest seq of rooms with traffic
+function applyRoomEvent(data) {
+    if (data.type === 'rooms') {
+        data.data.forEach(room => {
+            if (!rooms.has(String(room.id))) {
+                rooms.set(String(room.id), { id: room.id, name: room.name, lastSeq: 0, lastReadSeq: null });
+            }
+        });
+    } else if (data.type === 'activity') {
+        data.data.forEach(activity => {
+            const room = rooms.get(String(activity.roomId));
+            if (room) {
+                room.lastSeq = Math.max(room.lastSeq, activity.lastSeq);
+            }
+        });
+    }
+    renderRooms();
+}
+
+// Tells the server how far we have read in the open room, at most once a second
+function markRead() {
+    if (readTimer) return;
+    readTimer = setTimeout(() => {
+        readTimer = null;
+        const room = rooms.get(String(currentRoomId));
+        if (ws && currentRoomId && lastSeq > 0) {
+            ws.send(`/app/room/${currentRoomId}`, {}, JSON.stringify({ type: 'read', seq: lastSeq }));
+            if (room) {
+                room.lastReadSeq = Math.max(room.lastReadSeq ?? 0, lastSeq);
+            }
+        }
+    }, 1000);
+}
+
 // Handle create room
 createRoomForm.addEventListener('submit', async (e) => {
     e.preventDefault();
@@ -94,7 +198,7 @@ createRoomForm.addEventListener('submit', async (e) => {
     try {
         const response = await fetch('http://localhost:8080/api/rooms', {
             method: 'POST',
-            headers: { 'Content-Type': 'application/json' },
+            headers: authHeaders({ 'Content-Type': 'application/json' }),
             body: JSON.stringify({ name: roomName })
         });
         if (!response.ok) throw new Error('Failed to create room');
@@ -108,54 +212,21 @@ createRoomForm.addEventListener('submit', async (e) => {
     }
 });
 
-// Connect to WebSocket and load message history when selecting a room
+// Load message history, then connect to WebSocket when selecting a room
 roomSelect.addEventListener('change', async (e) => {
     currentRoomId = e.target.value;
     if (currentRoomId) {
         try {
             if (ws) {
-                ws.disconnect();
+                const old = ws;
+                ws = null;
+                old.disconnect();
             }
-            const sock = new SockJS('/chat');
-            ws = Stomp.over(sock);
-            ws.connect({}, (frame) => {
-                console.log(`Connected to WebSocket for room ${currentRoomId}`);
-//                console.log('✅ STOMP CONNECTED', frame);
-                ws.send(`/app/room/${currentRoomId}`, {}, JSON.stringify({
-                    type: 'join',
-                    username: currentUser.username
-                }));
-                ws.subscribe(`/topic/room/${currentRoomId}`, (message) => {
-                    try {
-                        const data = JSON.parse(message.body);
-                        console.log('Received WebSocket message:', data);
-                        if (data.type === 'message') {
-                            appendMessage(data.data);
-                        } else if (data.type === 'userList') {
-                            updateUserList(data.data);
-                        } else if (data.type === 'typing') {
-                            showTypingIndicator(data.data.username);
-                        } else if (data.type === 'notification') {
-                            showNotification(data.data);
-                        } else if (data.type === 'error') {
-                            console.error('WebSocket error:', data.message);
-                            alert(`Chat error: ${data.message}`);
-                        }
-                    } catch (error) {
-                        console.error('Error parsing WebSocket message:', error);
-                    }
-                });
-            }, (error) => {
-                console.error('WebSocket connection error:', error);
-                alert('Failed to connect to chat room');
-            });
-
-            messagesDiv.innerHTML = '';
-            const response = await fetch(`http://localhost:8080/api/rooms/${currentRoomId}/messages`);
-            if (!response.ok) throw new Error('Failed to fetch messages');
-            const messages = await response.json();
-            console.log('Fetched messages:', messages);
-            messages.forEach(message => appendMessage(message));
+            clearTimeout(reconnectTimer);
+            reconnectDelay = 1000;
+            await loadHistory(currentRoomId);
+            // Anything sent between the history fetch and the subscription comes back as a replay
+            connectToRoom(currentRoomId);
         } catch (error) {
             console.error('Error setting up room:', error);
             alert('Failed to join room');
@@ -163,6 +234,132 @@ roomSelect.addEventListener('change', async (e) => {
     }
 });
 
+async function loadHistory(roomId) {
+    messagesDiv.innerHTML = '';
+    lastSeq = 0;
+    const response = await fetch(`http://localhost:8080/api/rooms/${roomId}/messages`, { headers: authHeaders() });
+    if (!response.ok) throw new Error('Failed to fetch messages');
+    const messages = await response.json();
+    console.log('Fetched messages:', messages);
+    messages.forEach(message => acceptMessage(message));
+}
+
+// Plain WebSocket (/chat-ws) where the browser has it, which saves SockJS framing; SockJS for the rest
+function openSocket() {
+    if ('WebSocket' in window) {
+        const scheme = location.protocol === 'https:' ? 'wss' : 'ws';
+        return new WebSocket(`${scheme}://${location.host}/chat-ws`);
+    }
+    return new SockJS('/chat');
+}
+
+// Connects and subscribes with "resume-from", so after a dropped connection only the missed messages are sent
+function connectToRoom(roomId) {
+    const client = Stomp.over(openSocket());
+    ws = client;
+    client.connect(authHeaders(), (frame) => {
+        console.log(`Connected to WebSocket for room ${roomId}`);
+        reconnectDelay = 1000;
+        // Missed messages for this session, or a request to reload when too many were missed
+        client.subscribe('/user/queue/replay', (message) => {
+            const data = JSON.parse(message.body);
+            if (String(data.data.roomId) === String(currentRoomId)) {
+                finishReplay(data);
+            }
+        });
+        // Activity in rooms we follow, coalesced by the server per user
+        client.subscribe('/user/queue/notifications', (message) => {
+            const data = JSON.parse(message.body);
+            data.data
+                .filter(notification => String(notification.roomId) !== String(currentRoomId))
+                .forEach(notification => showNotification(notification));
+        });
+        // Sent at most every few seconds when the server drops our frames for sending too fast
+        client.subscribe('/user/queue/errors', (message) => {
+            const data = JSON.parse(message.body);
+            console.warn('WebSocket error:', data.message);
+            const div = document.createElement('div');
+            div.className = 'bg-red-100 p-2 mb-2 border rounded';
+            div.textContent = data.message;
+            notificationArea.appendChild(div);
+            setTimeout(() => {
+                div.remove();
+            }, 5000);
+        });
+        // New rooms and room activity, so the room list never needs polling
+        client.subscribe('/topic/rooms', (message) => applyRoomEvent(JSON.parse(message.body)));
+        // Full member list, sent once to this session after it joins
+        client.subscribe('/user/queue/presence', (message) => {
+            const data = JSON.parse(message.body);
+            if (String(data.data.roomId) === String(currentRoomId)) {
+                roomMembers = new Set(data.data.users);
+                updateUserList([...roomMembers]);
+            }
+        });
+        // Live messages are held back until the replay has been applied
+        replaying = true;
+        pendingLive = [];
+        client.subscribe(`/topic/room/${roomId}`, (message) => {
+            try {
+                const data = JSON.parse(message.body);
+                console.log('Received WebSocket message:', data);
+                if (data.type === 'message') {
+                    if (replaying) {
+                        pendingLive.push(data.data);
+                    } else {
+                        acceptMessage(data.data);
+                    }
+                } else if (data.type === 'edit' || data.type === 'delete' || data.type === 'reaction') {
+                    applyMessageDelta(data.type, data.data);
+                } else if (data.type === 'presence') {
+                    applyPresence(data.data);
+                } else if (data.type === 'typing') {
+                    showTypingIndicator(data.data.usernames);
+                } else if (data.type === 'error') {
+                    console.error('WebSocket error:', data.message);
+                    alert(`Chat error: ${data.message}`);
+                }
+            } catch (error) {
+                console.error('Error parsing WebSocket message:', error);
+            }
+        }, { 'resume-from': String(lastSeq) });
+        client.send(`/app/room/${roomId}`, {}, JSON.stringify({
+            type: 'join',
+            username: currentUser.username
+        }));
+    }, (error) => {
+        console.error('WebSocket connection error:', error);
+        // Only the current connection reconnects; a room switch disconnects the old one on purpose
+        if (ws === client && String(roomId) === String(currentRoomId)) {
+            reconnectTimer = setTimeout(() => connectToRoom(roomId), reconnectDelay);
+            reconnectDelay = Math.min(reconnectDelay * 2, 30000);
+        }
+    });
+}
+
+async function finishReplay(data) {
+    if (data.type === 'resync') {
+        await loadHistory(currentRoomId);
+    } else {
+        data.data.messages.forEach(message => acceptMessage(message));
+    }
+    replaying = false;
+    pendingLive.forEach(message => acceptMessage(message));
+    pendingLive = [];
+}
+
+// Skips messages already shown, e.g. a live message that was also part of a replay
+function acceptMessage(message) {
+    if (message.seq != null) {
+        if (message.seq <= lastSeq) {
+            return;
+        }
+        lastSeq = message.seq;
+        markRead();
+    }
+    appendMessage(message);
+}
+
 // Send message via WebSocket
 messageForm.addEventListener('submit', (e) => {
     e.preventDefault();
@@ -186,9 +383,10 @@ messageForm.addEventListener('submit', (e) => {
     }
 });
 
-// Send typing event
+// Send typing event, at most once a second; the server drops repeats inside its window anyway
 messageInput.addEventListener('input', () => {
-    if (ws && currentRoomId && currentUser) {
+    if (ws && currentRoomId && currentUser && Date.now() - lastTypingSentAt >= 1000) {
+        lastTypingSentAt = Date.now();
         try {
             const typingMessage = {
                 type: 'typing',
@@ -213,64 +411,174 @@ window.addEventListener('beforeunload', () => {
         ws.disconnect();
     }
 });
-//--------------fetching username----------------
-async function getUsernameById(userId) {
+// Sender names: messages normally carry them; anything missing is resolved in one batched request
+const usernames = new Map();
+const pendingUserIds = new Set();
+let userLookupTimer = null;
+
+function displayName(message) {
+    if (message.username) {
+        usernames.set(message.userId, message.username);
+        return message.username;
+    }
+    if (usernames.has(message.userId)) {
+        return usernames.get(message.userId);
+    }
+    pendingUserIds.add(message.userId);
+    clearTimeout(userLookupTimer);
+    userLookupTimer = setTimeout(resolveUsernames, 50);
+    return `User ${message.userId}`;
+}
+
+async function resolveUsernames() {
+    const ids = [...pendingUserIds];
+    pendingUserIds.clear();
+    if (!ids.length) return;
     try {
-        const response = await fetch(`http://localhost:8080/api/rooms/${userId}`);
-        if (!response.ok) throw new Error(`Failed to fetch username for ID ${userId}`);
-        const data = await response.json(); // Parse JSON
-        return data.username; // ✅ Return only the username string
+        const response = await fetch(`http://localhost:8080/api/users?ids=${ids.join(',')}`, { headers: authHeaders() });
+        if (!response.ok) throw new Error(`Failed to fetch usernames for ${ids.length} users`);
+        const users = await response.json();
+        users.forEach(user => {
+            usernames.set(user.id, user.username);
+            document.querySelectorAll(`[data-user-id="${user.id}"]`).forEach(el => el.textContent = user.username);
+        });
     } catch (error) {
-        console.error('Error fetching username:', error);
-        return `UnknownUser(${userId})`;
+        console.error('Error fetching usernames:', error);
     }
 }
 
 // Append a message to the UI
-async function appendMessage(message) {
+const QUICK_REACTIONS = ['👍', '❤️', '😂'];
+
+function appendMessage(message) {
     const div = document.createElement('div');
-//    div.className = 'p-2 border-b';
-//    //---------------------------------id to name of user--------------------------
-//    div.textContent = `[${new Date(message.timestamp).toLocaleTimeString()}]  ${message.userId}: ${message.messageText}`;
-//    messagesDiv.appendChild(div);
     div.className = 'flex flex-col items-start';
-    const username = await getUsernameById(message.userId);
+    div.dataset.messageId = message.id;
+    const username = displayName(message);
+    const own = currentUser && message.userId === currentUser.id;
 
     div.innerHTML = `
     <div class="bg-blue-100 px-4 py-2 rounded-lg shadow-sm max-w-[75%]">
-      <p class="font-semibold text-blue-700">${username}</p>
-      <p class="text-sm">${message.messageText}</p>
+      <p class="font-semibold text-blue-700" data-user-id="${message.userId}">${username}</p>
+      <p class="text-sm message-text"></p>
+      <div class="message-reactions flex gap-1 mt-1 text-xs"></div>
     </div>
-    <span class="text-xs text-gray-400 mt-1 ml-2">${new Date(message.timestamp).toLocaleTimeString()}</span>
+    <span class="text-xs text-gray-400 mt-1 ml-2">${new Date(message.timestamp).toLocaleTimeString()}
+      <span class="message-edited"></span>
+      ${own ? '<button class="message-edit ml-2 hover:underline">edit</button><button class="message-delete ml-2 hover:underline">delete</button>' : ''}
+    </span>
     `;
     messagesDiv.appendChild(div);
+    renderMessageText(div, message);
+    if (!message.deletedAt) renderReactions(div, message.reactions || {});
+    if (own) {
+        div.querySelector('.message-edit').addEventListener('click', () => {
+            const text = prompt('Edit message', div.querySelector('.message-text').textContent);
+            if (text) sendChange({ type: 'edit', messageId: message.id, messageText: text });
+        });
+        div.querySelector('.message-delete').addEventListener('click', () => {
+            if (confirm('Delete this message?')) sendChange({ type: 'delete', messageId: message.id });
+        });
+    }
     messagesDiv.scrollTop = messagesDiv.scrollHeight;
     console.log('Appended message:', message);
 }
 
+function renderMessageText(div, message) {
+    const text = div.querySelector('.message-text');
+    if (message.deletedAt) {
+        text.textContent = 'Message deleted';
+        text.classList.add('italic', 'text-gray-400');
+        div.querySelectorAll('.message-edit, .message-delete').forEach(button => button.remove());
+    } else {
+        text.textContent = message.messageText;
+    }
+    div.querySelector('.message-edited').textContent = message.editedAt && !message.deletedAt ? '(edited)' : '';
+}
+
+// Counts by emoji; a click toggles our own reaction, the server answers with the new count for everyone
+function renderReactions(div, counts) {
+    const container = div.querySelector('.message-reactions');
+    const mine = div.myReactions || (div.myReactions = new Set());
+    div.reactionCounts = counts;
+    container.innerHTML = '';
+    new Set([...Object.keys(counts), ...QUICK_REACTIONS]).forEach(emoji => {
+        const count = counts[emoji] || 0;
+        const button = document.createElement('button');
+        button.className = `px-1 rounded ${mine.has(emoji) ? 'bg-blue-200' : 'bg-white'}`;
+        button.textContent = count ? `${emoji} ${count}` : emoji;
+        button.addEventListener('click', () => {
+            const remove = mine.has(emoji);
+            if (remove) mine.delete(emoji); else mine.add(emoji);
+            sendChange({ type: 'react', messageId: Number(div.dataset.messageId), emoji, remove });
+        });
+        container.appendChild(button);
+    });
+}
+
+function sendChange(change) {
+    if (ws && currentRoomId) {
+        ws.send(`/app/room/${currentRoomId}`, {}, JSON.stringify(change));
+    }
+}
+
+// Edits, deletes and reaction counts arrive as small deltas keyed by message id
+function applyMessageDelta(type, delta) {
+    const div = messagesDiv.querySelector(`[data-message-id="${delta.id}"]`);
+    if (!div) return;
+    if (type === 'edit') {
+        renderMessageText(div, { messageText: delta.messageText, editedAt: delta.editedAt });
+    } else if (type === 'delete') {
+        renderMessageText(div, { deletedAt: delta.deletedAt });
+        div.querySelector('.message-reactions').innerHTML = '';
+    } else if (type === 'reaction') {
+        const counts = { ...div.reactionCounts };
+        if (delta.count > 0) counts[delta.emoji] = delta.count; else delete counts[delta.emoji];
+        renderReactions(div, counts);
+    }
+}
+
+// Apply a join/leave delta to the member list
+function applyPresence(delta) {
+    if (delta.action === 'join') {
+        roomMembers.add(delta.username);
+    } else {
+        roomMembers.delete(delta.username);
+    }
+    updateUserList([...roomMembers]);
+}
+
 // Update user list in the UI
 function updateUserList(usernames) {
     userList.innerHTML = usernames.length ? usernames.join(', ') : 'No users online';
 }
 
-// Show typing indicator with timeout
-function showTypingIndicator(username) {
-    if (username !== currentUser.username) {
-        typingIndicator.innerHTML = `${username} is typing...`;
-        clearTimeout(typingTimeout);
-        typingTimeout = setTimeout(() => {
-            typingIndicator.innerHTML = '';
-        }, 3000);
+// Show the server's snapshot of who is typing; an empty snapshot clears it
+function showTypingIndicator(usernames) {
+    const others = usernames.filter(username => username !== currentUser.username);
+    clearTimeout(typingTimeout);
+    if (others.length === 0) {
+        typingIndicator.innerHTML = '';
+        return;
     }
+    typingIndicator.innerHTML = others.length === 1
+        ? `${others[0]} is typing...`
+        : `${others.join(', ')} are typing...`;
+    typingTimeout = setTimeout(() => {
+        typingIndicator.innerHTML = '';
+    }, 5000);
 }
 
 // Show notification for messages in other rooms
 function showNotification(data) {
     const div = document.createElement('div');
     div.className = 'bg-yellow-100 p-2 mb-2 border rounded';
-    div.textContent = `New message in ${data.roomName}: ${data.messageText}`;
+    const summary = data.count > 1
+        ? `${data.count} new messages in ${data.roomName}, latest: ${data.messageText}`
+        : `New message in ${data.roomName}: ${data.messageText}`;
+    div.textContent = summary;
     notificationArea.appendChild(div);
-    alert(`New message in ${data.roomName}: ${data.messageText}`);
+    alert(summary);
     setTimeout(() => {
         div.remove();
     }, 5000);
@@ -0,0 +1,207 @@
+package com.example.chat.archive;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.Message;
+import com.example.chat.repository.MessageRepository;
+import com.example.chat.service.ChatService;
+import com.example.chat.service.RoomSequencer;
+import com.example.chat.websocket.RoomSerialExecutor;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "chat.archive.enabled=true",
+        "chat.archive.initial-delay-ms=3600000"
+})
+@ActiveProfiles("test")
+class MessageArchiverTest {
+
+    @TempDir
+    static Path archiveDir;
+
+    @DynamicPropertySource
+    static void archiveProperties(DynamicPropertyRegistry registry) {
+        registry.add("chat.archive.dir", archiveDir::toString);
+    }
+
+    @Autowired
+    private MessageArchiver messageArchiver;
+
+    @Autowired
+    private MessageArchive messageArchive;
+
+    @Autowired
+    private MessageRepository messageRepository;
+
+    @Autowired
+    private ChatService chatService;
+
+    @Autowired
+    private RoomSerialExecutor roomExecutor;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @Test
+    void sequenceContinuesAfterRoomIsArchivedAndNodeRestarts() throws Exception {
+        Long roomId = 9001L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365);
+        for (long seq = 1; seq <= 5; seq++) {
+            messageRepository.save(message(roomId, seq, old.plusMinutes(seq)));
+        }
+
+        messageArchiver.archiveOlderThan(LocalDateTime.now());
+
+        List<Message> hot = messageRepository.findByRoomIdOrderByIdDesc(roomId, Limit.of(10));
+        assertEquals(1, hot.size(), "the newest message stays in the table");
+        assertEquals(5L, hot.get(0).getSeq());
+        assertEquals(4, messageArchive.page(roomId, null, null, 10).size());
+
+        assertEquals(6, restartedSequencer().next(roomId));
+    }
+
+    @Test
+    void sequenceContinuesFromArchiveWhenNoHotRowIsLeft() throws Exception {
+        // Rooms archived before the newest row was kept hot have nothing left in the table
+        Long roomId = 9002L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365);
+        List<Message> archived = new ArrayList<>();
+        for (long seq = 1; seq <= 3; seq++) {
+            Message message = message(roomId, seq, old.plusMinutes(seq));
+            message.setId(1_000_000 + seq);
+            archived.add(message);
+        }
+        messageArchive.append(roomId, archived);
+
+        assertEquals(4, restartedSequencer().next(roomId));
+    }
+
+    @Test
+    void archivedMessagesKeepTheirEditAndDeleteMarkers() throws Exception {
+        Long roomId = 9003L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365).withNano(0);
+        Message edited = message(roomId, 1, old);
+        edited.setEditedAt(old.plusMinutes(5));
+        Message deleted = message(roomId, 2, old.plusMinutes(1));
+        deleted.setMessageText("");
+        deleted.setDeletedAt(old.plusMinutes(6));
+        messageRepository.save(edited);
+        messageRepository.save(deleted);
+        messageRepository.save(message(roomId, 3, old.plusMinutes(2)));
+
+        messageArchiver.archiveOlderThan(LocalDateTime.now());
+
+        List<Message> archived = messageArchive.page(roomId, null, null, 10);
+        assertEquals(2, archived.size());
+        assertEquals(old.plusMinutes(5), archived.get(0).getEditedAt());
+        assertNull(archived.get(0).getDeletedAt());
+        assertEquals(old.plusMinutes(6), archived.get(1).getDeletedAt());
+        assertEquals(2L, archived.get(1).getSeq());
+    }
+
+    @Test
+    void replayThatReachesIntoTheArchiveAsksForAResync() throws Exception {
+        Long roomId = 9004L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365);
+        for (long seq = 1; seq <= 5; seq++) {
+            messageRepository.save(message(roomId, seq, old.plusMinutes(seq)));
+        }
+
+        messageArchiver.archiveOlderThan(LocalDateTime.now());
+
+        assertNull(chatService.getMessagesSince(roomId, 2, 500), "messages 3 and 4 are only in the archive");
+        List<Message> missed = chatService.getMessagesSince(roomId, 4, 500);
+        assertEquals(1, missed.size());
+        assertEquals(5L, missed.get(0).getSeq());
+    }
+
+    @Test
+    void archivingWaitsForTheRoomsOtherWork() throws Exception {
+        Long roomId = 9005L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365);
+        for (long seq = 1; seq <= 3; seq++) {
+            messageRepository.save(message(roomId, seq, old.plusMinutes(seq)));
+        }
+        // Stands in for an edit that is in progress in the room
+        CountDownLatch editing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<Void> edit = CompletableFuture.runAsync(() -> roomExecutor.execute(String.valueOf(roomId), () -> {
+            editing.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        assertTrue(editing.await(10, TimeUnit.SECONDS));
+
+        CompletableFuture<Void> archiving = CompletableFuture.runAsync(() -> {
+            try {
+                messageArchiver.archiveOlderThan(LocalDateTime.now());
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        Thread.sleep(200);
+        assertFalse(archiving.isDone());
+        assertFalse(messageArchive.hasMessages(roomId), "nothing is archived while the room is busy");
+
+        release.countDown();
+        edit.get(10, TimeUnit.SECONDS);
+        archiving.get(10, TimeUnit.SECONDS);
+        assertEquals(2, messageArchive.page(roomId, null, null, 10).size());
+    }
+
+    @Test
+    void archivedMessagesStillInTheCacheCannotBeChanged() throws Exception {
+        Long roomId = 9006L;
+        LocalDateTime old = LocalDateTime.now().minusDays(365);
+        Message first = messageRepository.save(message(roomId, 1, old));
+        messageRepository.save(message(roomId, 2, old.plusMinutes(1)));
+        // Warms the room's cache with both messages
+        chatService.getMessagesByRoomId(roomId, null, null, 10);
+
+        messageArchiver.archiveOlderThan(LocalDateTime.now());
+
+        CustomException rejected = assertThrows(CustomException.class,
+                () -> chatService.editMessage(roomId, first.getId(), 1L, "changed"));
+        assertEquals(400, rejected.getStatusCode());
+        assertEquals("message 1", messageArchive.page(roomId, null, null, 10).get(0).getMessageText());
+    }
+
+    // A fresh instance has no counters in memory, like the sequencer of a node that just started
+    private RoomSequencer restartedSequencer() {
+        return context.getAutowireCapableBeanFactory().createBean(RoomSequencer.class);
+    }
+
+    private static Message message(Long roomId, long seq, LocalDateTime timestamp) {
+        Message message = new Message();
+        message.setRoomId(roomId);
+        message.setUserId(1L);
+        message.setMessageText("message " + seq);
+        message.setTimestamp(timestamp);
+        message.setSeq(seq);
+        return message;
+    }
+}
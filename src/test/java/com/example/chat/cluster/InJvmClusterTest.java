@@ -0,0 +1,159 @@
+package com.example.chat.cluster;
+
+import com.example.chat.ChatApplication;
+import com.example.chat.websocket.ClusterPresence;
+import com.example.chat.websocket.PresenceRegistry;
+import com.example.chat.websocket.RoomEventPublisher;
+import com.example.chat.websocket.RoomEventPublisher.RoomEvent;
+import com.example.chat.websocket.TypingAggregator;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.MessageHandler;
+import org.springframework.messaging.SubscribableChannel;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/** Two nodes in one JVM joined by {@link InJvmClusterBus}, each with its own database and web server. */
+class InJvmClusterTest {
+    private static ConfigurableApplicationContext nodeA;
+    private static ConfigurableApplicationContext nodeB;
+
+    @BeforeAll
+    static void startNodes() {
+        nodeA = startNode("node-a");
+        nodeB = startNode("node-b");
+    }
+
+    @AfterAll
+    static void stopNodes() {
+        if (nodeB != null) {
+            nodeB.close();
+        }
+        if (nodeA != null) {
+            nodeA.close();
+        }
+    }
+
+    private static ConfigurableApplicationContext startNode(String nodeId) {
+        // Arguments rather than default properties, which application.properties would override
+        return new SpringApplicationBuilder(ChatApplication.class)
+                .profiles("test")
+                .run("--server.port=0",
+                        "--spring.datasource.url=jdbc:h2:mem:" + nodeId + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+                        "--chat.cluster.mode=in-jvm",
+                        "--chat.cluster.name=in-jvm-test",
+                        "--chat.cluster.node-id=" + nodeId);
+    }
+
+    @Test
+    void broadcastReachesTheOtherNodesBroker() throws Exception {
+        BlockingQueue<Message<?>> received = new LinkedBlockingQueue<>();
+        SubscribableChannel brokerB = nodeB.getBean("brokerChannel", SubscribableChannel.class);
+        brokerB.subscribe(received::add);
+
+        String topic = RoomEventPublisher.roomTopic(42);
+        nodeA.getBean(RoomEventPublisher.class).publish(topic, new RoomEvent("test", Map.of("text", "hello from a")));
+
+        Message<?> delivered;
+        do {
+            delivered = received.poll(10, TimeUnit.SECONDS);
+            assertNotNull(delivered, "broadcast did not reach node B");
+        } while (!topic.equals(SimpMessageHeaderAccessor.getDestination(delivered.getHeaders())));
+        assertTrue(new String((byte[]) delivered.getPayload(), StandardCharsets.UTF_8).contains("hello from a"));
+    }
+
+    @Test
+    void presenceReachesTheOtherNode() throws Exception {
+        ClusterPresence presenceB = nodeB.getBean(ClusterPresence.class);
+
+        // A delta, as sent when a user joins
+        nodeA.getBean(ClusterPresence.class).announce("7", "alice", true);
+        awaitTrue(() -> presenceB.isPresentElsewhere("7", "alice"));
+
+        // A snapshot, as sent on every sync
+        nodeA.getBean(PresenceRegistry.class).join("session-1", "7", "bob");
+        nodeA.getBean(ClusterPresence.class).sync();
+        awaitTrue(() -> presenceB.usersIn("7").contains("bob"));
+        assertEquals(Set.of("bob"), presenceB.usersIn("7"), "the snapshot replaces what node B knew about node A");
+
+        nodeA.getBean(ClusterPresence.class).announce("7", "bob", false);
+        awaitTrue(() -> !presenceB.isPresentElsewhere("7", "bob"));
+    }
+
+    @Test
+    void typingSnapshotsMergeTypistsFromBothNodes() throws Exception {
+        String topic = RoomEventPublisher.roomTopic(9);
+        BlockingQueue<Message<?>> receivedA = new LinkedBlockingQueue<>();
+        BlockingQueue<Message<?>> receivedB = new LinkedBlockingQueue<>();
+        SubscribableChannel brokerA = nodeA.getBean("brokerChannel", SubscribableChannel.class);
+        SubscribableChannel brokerB = nodeB.getBean("brokerChannel", SubscribableChannel.class);
+        MessageHandler handlerA = receivedA::add;
+        MessageHandler handlerB = receivedB::add;
+        brokerA.subscribe(handlerA);
+        brokerB.subscribe(handlerB);
+        try {
+            nodeA.getBean(TypingAggregator.class).typing("9", "alice");
+            nodeB.getBean(TypingAggregator.class).typing("9", "bob");
+            awaitTypists(receivedA, topic, Set.of("alice", "bob"));
+            awaitTypists(receivedB, topic, Set.of("alice", "bob"));
+
+            // A stop on one node leaves the other node's typist in place everywhere
+            nodeA.getBean(TypingAggregator.class).stopped("9", "alice");
+            awaitTypists(receivedA, topic, Set.of("bob"));
+            awaitTypists(receivedB, topic, Set.of("bob"));
+        } finally {
+            brokerA.unsubscribe(handlerA);
+            brokerB.unsubscribe(handlerB);
+        }
+    }
+
+    // Fails on any snapshot for the topic that is neither the expected one nor on the way to it
+    private static void awaitTypists(BlockingQueue<Message<?>> received, String topic, Set<String> expected) throws Exception {
+        ObjectMapper objectMapper = new ObjectMapper();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (true) {
+            Message<?> delivered = received.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+            assertNotNull(delivered, "no typing snapshot with " + expected);
+            if (!topic.equals(SimpMessageHeaderAccessor.getDestination(delivered.getHeaders()))) {
+                continue;
+            }
+            JsonNode event = objectMapper.readTree((byte[]) delivered.getPayload());
+            if (!"typing".equals(event.path("type").asText())) {
+                continue;
+            }
+            Set<String> typists = new HashSet<>();
+            event.path("data").path("usernames").forEach(name -> typists.add(name.asText()));
+            if (typists.equals(expected)) {
+                return;
+            }
+            assertTrue(typists.containsAll(expected) || expected.containsAll(typists),
+                    () -> "unexpected typing snapshot " + typists + " while waiting for " + expected);
+        }
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met within 10 seconds");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.chat.search;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class InvertedIndexTest {
+
+    @Test
+    void pagesAreFullAndFreeOfDuplicatesAfterEditsAndDeletes() {
+        InvertedIndex index = new InvertedIndex();
+        for (long id = 1; id <= 100; id++) {
+            index.add(id, 1, "hello " + id);
+        }
+        // Edits re-index old messages out of id order; one edit drops the word, one message is deleted
+        for (long id = 10; id <= 90; id += 10) {
+            index.add(id, 1, "hello again " + id);
+        }
+        index.add(50, 1, "goodbye");
+        index.remove(60);
+
+        List<Long> expected = new ArrayList<>();
+        for (long id = 100; id >= 1; id--) {
+            if (id != 50 && id != 60) {
+                expected.add(id);
+            }
+        }
+        assertEquals(expected, allPages(index, "hello", 7));
+    }
+
+    @Test
+    void cursorsSurviveARebuildThatOrdersDocumentsDifferently() {
+        InvertedIndex live = new InvertedIndex();
+        // A rebuild streams the archive first, whose ids interleave with the table's
+        InvertedIndex rebuilt = new InvertedIndex();
+        for (long id = 1; id <= 60; id++) {
+            live.add(id, id % 3, "word " + id);
+        }
+        for (long id = 1; id <= 60; id++) {
+            if (id % 3 == 0) {
+                rebuilt.add(id, 0, "word " + id);
+            }
+        }
+        for (long id = 1; id <= 60; id++) {
+            if (id % 3 != 0) {
+                rebuilt.add(id, id % 3, "word " + id);
+            }
+        }
+
+        InvertedIndex.Page first = live.search("word", null, null, 25);
+        InvertedIndex.Page second = rebuilt.search("word", null, first.nextCursor(), 25);
+        assertEquals(36L, first.nextCursor());
+        assertEquals(35L, second.hits().get(0).messageId());
+        assertEquals(11L, second.hits().get(24).messageId());
+        assertEquals(List.of(6L, 3L), ids(rebuilt.search("word", 0L, 9L, 5)));
+    }
+
+    private static List<Long> allPages(InvertedIndex index, String query, int limit) {
+        List<Long> found = new ArrayList<>();
+        Long cursor = null;
+        do {
+            InvertedIndex.Page page = index.search(query, null, cursor, limit);
+            assertEquals(page.nextCursor() != null ? limit : page.hits().size(), page.hits().size());
+            found.addAll(ids(page));
+            cursor = page.nextCursor();
+        } while (cursor != null);
+        return found;
+    }
+
+    private static List<Long> ids(InvertedIndex.Page page) {
+        return page.hits().stream().map(InvertedIndex.Hit::messageId).toList();
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.chat.service;
+
+import com.example.chat.exception.CustomException;
+import com.example.chat.model.User;
+import com.example.chat.repository.UserRepository;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.ActiveProfiles;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+// H2's MySQL mode can hand out an identity value twice when concurrent inserts fail on a unique key
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:chat_auth;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1",
+        "chat.auth.bcrypt-queue-capacity=10000",
+        "chat.auth.bcrypt-timeout-ms=120000"
+})
+@ActiveProfiles("test")
+class AuthServiceTest {
+    private static final int USERS = 2000;
+
+    @TestConfiguration
+    static class CheapPasswords {
+        // The lowest cost bcrypt allows, so thousands of registrations finish in seconds
+        @Bean
+        @Primary
+        PasswordEncoder testPasswordEncoder() {
+            return new BCryptPasswordEncoder(4);
+        }
+    }
+
+    @Autowired
+    private AuthService authService;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void parallelRegistrationsCreateEachUserOnceAndNameTheDuplicateKey() throws Exception {
+        AtomicInteger registered = new AtomicInteger();
+        Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+        List<Future<?>> results = new ArrayList<>();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < USERS; i++) {
+                // Every username is sent twice with different emails, every email of the second set twice
+                // with different usernames
+                String username = "parallel-" + i / 2;
+                String email = "parallel-" + i + "@example.com";
+                results.add(clients.submit(() -> register(username, email, registered, failures)));
+                String otherName = "mail-" + i;
+                String sharedEmail = "shared-" + i / 2 + "@example.com";
+                results.add(clients.submit(() -> register(otherName, sharedEmail, registered, failures)));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        }
+
+        assertEquals(2, failures.size(), () -> "unexpected failures: " + failures);
+        assertEquals(USERS, registered.get());
+        assertEquals(USERS / 2, failures.get("Username already exists").get());
+        assertEquals(USERS / 2, failures.get("Email already exists").get());
+        assertEquals(USERS, userRepository.count());
+    }
+
+    @Test
+    void invalidInputIsRejectedAsSuch() {
+        CustomException blank = assertThrows(CustomException.class, () -> authService.registerUser(" ", "blank@example.com", "secret"));
+        assertEquals(400, blank.getStatusCode());
+        CustomException missing = assertThrows(CustomException.class, () -> authService.registerUser("no-email", null, "secret"));
+        assertEquals(400, missing.getStatusCode());
+        CustomException tooLong = assertThrows(CustomException.class,
+                () -> authService.registerUser("x".repeat(300), "long@example.com", "secret"));
+        assertEquals(400, tooLong.getStatusCode());
+        assertTrue(userRepository.findByUsername("no-email").isEmpty());
+    }
+
+    @Test
+    void duplicatesOnAnUnnamedUniqueIndexAreStillReportedAsSuch() {
+        // The schema as ddl-auto=update leaves it when the named keys came later: Hibernate's generated index
+        jdbcTemplate.execute("ALTER TABLE users DROP CONSTRAINT " + User.USERNAME_KEY);
+        jdbcTemplate.execute("CREATE UNIQUE INDEX UK_r43af9ap4edm43mmtq01oddj6 ON users (username)");
+        try {
+            authService.registerUser("legacy", "legacy@example.com", "secret");
+            CustomException duplicate = assertThrows(CustomException.class,
+                    () -> authService.registerUser("legacy", "legacy-2@example.com", "secret"));
+            assertEquals("Username already exists", duplicate.getMessage());
+            assertEquals(400, duplicate.getStatusCode());
+        } finally {
+            jdbcTemplate.execute("DROP INDEX UK_r43af9ap4edm43mmtq01oddj6");
+            jdbcTemplate.execute("ALTER TABLE users ADD CONSTRAINT " + User.USERNAME_KEY + " UNIQUE (username)");
+        }
+    }
+
+    private void register(String username, String email, AtomicInteger registered, Map<String, AtomicInteger> failures) {
+        try {
+            authService.registerUser(username, email, "secret");
+            registered.incrementAndGet();
+        } catch (CustomException e) {
+            failures.computeIfAbsent(e.getMessage(), message -> new AtomicInteger()).incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.chat.websocket;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.messaging.Message;
+import org.springframework.messaging.simp.SimpMessageHeaderAccessor;
+import org.springframework.messaging.simp.SimpMessageType;
+import org.springframework.messaging.support.MessageBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class InboundRateLimiterTest {
+    private final RoomEventPublisher eventPublisher = mock(RoomEventPublisher.class);
+    private InboundRateLimiter limiter;
+
+    @BeforeEach
+    void setUp() {
+        PayloadCodec payloadCodec = mock(PayloadCodec.class);
+        when(payloadCodec.factory(any())).thenReturn(new JsonFactory());
+        limiter = new InboundRateLimiter();
+        ReflectionTestUtils.setField(limiter, "payloadCodec", payloadCodec);
+        ReflectionTestUtils.setField(limiter, "meterRegistry", new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(limiter, "eventPublisher", eventPublisher);
+        ReflectionTestUtils.setField(limiter, "enabled", true);
+        // Slow enough that no bucket refills while the test runs
+        ReflectionTestUtils.setField(limiter, "messageUserRate", 0.01);
+        ReflectionTestUtils.setField(limiter, "messageUserBurst", 3);
+        ReflectionTestUtils.setField(limiter, "messageRoomRate", 0.01);
+        ReflectionTestUtils.setField(limiter, "messageRoomBurst", 1);
+        ReflectionTestUtils.setField(limiter, "maxBuckets", 1000L);
+        ReflectionTestUtils.setField(limiter, "notifyIntervalMs", 60_000L);
+        limiter.init();
+    }
+
+    @Test
+    void framesDroppedByAFullRoomDoNotUseUpTheSendersBudget() {
+        assertNotNull(limiter.preSend(chat("bob", "1"), null));
+        for (int i = 0; i < 5; i++) {
+            assertNull(limiter.preSend(chat("alice", "1"), null));
+        }
+        // Alice's burst of 3 is untouched by the frames room 1 turned away
+        assertNotNull(limiter.preSend(chat("alice", "2"), null));
+        assertNotNull(limiter.preSend(chat("alice", "3"), null));
+        assertNotNull(limiter.preSend(chat("alice", "4"), null));
+        assertNull(limiter.preSend(chat("alice", "5"), null));
+    }
+
+    @Test
+    void throttledSendersAreToldOncePerInterval() {
+        for (int i = 0; i < 10; i++) {
+            limiter.preSend(chat("alice", "1"), null);
+        }
+        verify(eventPublisher, times(1)).publishToSession(eq("session-alice"),
+                eq(RoomEventPublisher.userQueue("alice", "errors")), any());
+    }
+
+    private static Message<byte[]> chat(String user, String roomId) {
+        SimpMessageHeaderAccessor accessor = SimpMessageHeaderAccessor.create(SimpMessageType.MESSAGE);
+        accessor.setDestination("/app/room/" + roomId);
+        accessor.setSessionId("session-" + user);
+        accessor.setUser(() -> user);
+        accessor.setLeaveMutable(true);
+        byte[] payload = "{\"type\":\"message\",\"content\":\"hi\"}".getBytes(StandardCharsets.UTF_8);
+        return MessageBuilder.createMessage(payload, accessor.getMessageHeaders());
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.chat.websocket;
+
+import com.example.chat.websocket.OutboundSessionDecorator.OverflowPolicy;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundSessionDecoratorTest {
+    private static final String TOPIC = RoomEventPublisher.roomTopic(1);
+
+    @ParameterizedTest
+    @EnumSource(value = OverflowPolicy.class, names = {"DROP", "COALESCE"})
+    void presenceSurvivesAnOverflowingSession(OverflowPolicy policy) throws Exception {
+        WebSocketSession session = mock(WebSocketSession.class);
+        when(session.getId()).thenReturn("slow");
+        List<WebSocketMessage<?>> sent = new ArrayList<>();
+        doAnswer(invocation -> sent.add(invocation.getArgument(0))).when(session).sendMessage(any());
+        // Nothing drains until the end, as with a client that stopped reading
+        List<Runnable> drains = new ArrayList<>();
+        AtomicInteger dropped = new AtomicInteger();
+        OutboundSessionDecorator decorator = new OutboundSessionDecorator(session, 60_000, 1000, policy, drains::add,
+                new OutboundSessionDecorator.Listener() {
+                    @Override
+                    public void dropped(int frames) {
+                        dropped.addAndGet(frames);
+                    }
+
+                    @Override
+                    public void coalesced() {
+                    }
+
+                    @Override
+                    public void disconnected(String reason) {
+                    }
+                });
+
+        fillWithTyping(decorator, dropped);
+        decorator.sendMessage(presence("join", "alice"));
+        decorator.sendMessage(presence("join", "bob"));
+        decorator.sendMessage(presence("leave", "alice"));
+        fillWithTyping(decorator, dropped);
+        decorator.sendMessage(presence("join", "carol"));
+        // Far more than the buffer holds, so only replacing queued frames keeps the session open
+        for (int i = 0; i < 50; i++) {
+            decorator.sendMessage(presence("join", "dave"));
+            decorator.sendMessage(presence("leave", "dave"));
+        }
+        decorator.sendMessage(presence("join", "dave"));
+
+        drains.forEach(Runnable::run);
+        verify(session, never()).close(any(CloseStatus.class));
+        Set<String> present = new LinkedHashSet<>();
+        for (WebSocketMessage<?> message : sent) {
+            String frame = ((TextMessage) message).getPayload();
+            String body = frame.substring(frame.indexOf("\n\n") + 2);
+            if (body.startsWith("join ")) {
+                present.add(body.substring(5).trim());
+            } else if (body.startsWith("leave ")) {
+                present.remove(body.substring(6).trim());
+            }
+        }
+        assertEquals(Set.of("bob", "carol", "dave"), present);
+    }
+
+    // Queues typing frames until the first one is dropped, i.e. until the buffer is full
+    private static void fillWithTyping(OutboundSessionDecorator decorator, AtomicInteger dropped) throws Exception {
+        int before = dropped.get();
+        while (dropped.get() == before) {
+            decorator.sendMessage(frame("x-priority:low\n", "typing " + "x".repeat(150)));
+        }
+    }
+
+    private static TextMessage presence(String action, String username) {
+        return frame(OutboundSessionDecorator.COALESCE_HEADER + ":" + ChatWebSocketHandler.presenceKey(username) + "\n",
+                action + " " + username);
+    }
+
+    private static TextMessage frame(String headers, String body) {
+        return new TextMessage("MESSAGE\ndestination:" + TOPIC + "\n" + headers + "\n" + body + "\u0000");
+    }
+}